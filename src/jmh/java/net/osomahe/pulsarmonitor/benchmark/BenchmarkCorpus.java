@@ -0,0 +1,77 @@
+package net.osomahe.pulsarmonitor.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+
+/**
+ * Generated json schemas and payloads for benchmarks. Schema {@code i} accepts messages with type {@code event-i}.
+ */
+public final class BenchmarkCorpus {
+
+    public static final String NO_MATCH_TYPE = "event-unknown";
+
+    private BenchmarkCorpus() {
+    }
+
+    public static String type(int schemaIndex) {
+        return "event-" + schemaIndex;
+    }
+
+    public static Path writeSchemas(int count) {
+        try {
+            var dir = Files.createTempDirectory("pulsar-monitor-schemas");
+            dir.toFile().deleteOnExit();
+            for (int i = 0; i < count; i++) {
+                var schema = new JSONObject()
+                        .put("title", "Event " + i)
+                        .put("type", "object")
+                        .put("required", new JSONArray().put("type").put("id").put("payload"))
+                        .put("properties", new JSONObject()
+                                .put("type", new JSONObject().put("type", "string").put("enum", new JSONArray().put(type(i))))
+                                .put("id", new JSONObject().put("type", "string"))
+                                .put("payload", new JSONObject().put("type", "object")));
+                var file = dir.resolve("event-%04d.json".formatted(i));
+                Files.writeString(file, schema.toString(2));
+                file.toFile().deleteOnExit();
+            }
+            return dir;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Json message of given type with payload padded by items to approximately given size in bytes.
+     */
+    public static byte[] jsonPayload(String type, int sizeBytes) {
+        var random = new Random(sizeBytes);
+        var items = new JSONArray();
+        var message = new JSONObject()
+                .put("type", type)
+                .put("id", Long.toHexString(random.nextLong()))
+                .put("payload", new JSONObject().put("items", items));
+        while (message.toString().length() < sizeBytes) {
+            items.put(new JSONObject()
+                    .put("sku", Long.toHexString(random.nextLong()))
+                    .put("quantity", random.nextInt(100))
+                    .put("price", random.nextDouble() * 1000)
+                    .put("note", "item " + items.length()));
+        }
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] binaryPayload(int sizeBytes) {
+        var bytes = new byte[sizeBytes];
+        new Random(sizeBytes).nextBytes(bytes);
+        bytes[0] = 0;
+        return bytes;
+    }
+}
@@ -0,0 +1,201 @@
+package net.osomahe.pulsarmonitor.benchmark;
+
+import net.osomahe.pulsarmonitor.schema.boundary.SchemaFixtures;
+import net.osomahe.pulsarmonitor.subscribe.control.LatencyHistogram;
+import net.osomahe.pulsarmonitor.subscribe.control.ListenerFixtures;
+import net.osomahe.pulsarmonitor.subscribe.control.TopicsListener;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Sustained load of {@link TopicsListener} without broker. Generated messages of several partitioned topics are
+ * delivered by worker threads to the listener with stub consumer, the same way Pulsar client calls message listener.
+ * Reports messages per second, processing latency quantiles and heap usage of measured period.
+ * <p>
+ * Process exits with status 1 when {@code min-rate} or {@code max-p99-micros} is configured and not met, so it can be
+ * used as throughput regression check in CI.
+ */
+public final class LoadDriver {
+
+    // generated messages are reused, pool has to be larger than number of topic partitions and message kinds
+    private static final int MESSAGE_POOL_SIZE = 4096;
+
+    private static final long MB = 1024 * 1024;
+
+    private final LoadProfile profile;
+
+    private final TopicsListener listener;
+
+    private final Consumer<byte[]> consumer;
+
+    private final List<Message<byte[]>> messages;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final LongAdder processed = new LongAdder();
+
+    private volatile boolean measuring;
+
+    private volatile boolean running = true;
+
+    private LoadDriver(LoadProfile profile) {
+        this.profile = profile;
+        var facade = SchemaFixtures.createFacade(BenchmarkCorpus.writeSchemas(profile.schemas), true, false);
+        this.listener = ListenerFixtures.createListener(facade, true);
+        this.consumer = ListenerFixtures.stubConsumer();
+        this.messages = generateMessages(profile);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // diagnostics of invalid and binary messages are logged at WARN level, keep report readable
+        java.util.logging.Logger.getLogger("").setLevel(java.util.logging.Level.SEVERE);
+        var profile = LoadProfile.parse(args);
+        System.out.println("Load profile: " + profile);
+        var passed = new LoadDriver(profile).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Messages of every kind are spread over all topic partitions, valid messages cycle through cardinality types.
+     */
+    private static List<Message<byte[]>> generateMessages(LoadProfile profile) {
+        var validPayloads = new ArrayList<byte[]>();
+        for (int i = 0; i < profile.cardinality; i++) {
+            validPayloads.add(BenchmarkCorpus.jsonPayload(BenchmarkCorpus.type(i), profile.payloadBytes));
+        }
+        var invalidPayload = BenchmarkCorpus.jsonPayload(BenchmarkCorpus.NO_MATCH_TYPE, profile.payloadBytes);
+        var binaryPayload = BenchmarkCorpus.binaryPayload(profile.payloadBytes);
+
+        var random = new Random(MESSAGE_POOL_SIZE);
+        var messages = new ArrayList<Message<byte[]>>(MESSAGE_POOL_SIZE);
+        for (int i = 0; i < MESSAGE_POOL_SIZE; i++) {
+            var topic = "persistent://public/default/load-%d-partition-%d".formatted(i % profile.topics, (i / profile.topics) % profile.partitions);
+            var kind = random.nextDouble();
+            byte[] payload;
+            if (kind < profile.valid) {
+                payload = validPayloads.get(i % validPayloads.size());
+            } else if (kind < profile.valid + profile.invalid) {
+                payload = invalidPayload;
+            } else {
+                payload = binaryPayload;
+            }
+            messages.add(ListenerFixtures.stubMessage(topic, payload));
+        }
+        return messages;
+    }
+
+    private boolean run() throws InterruptedException {
+        var workers = new ArrayList<Thread>();
+        for (int i = 0; i < profile.threads; i++) {
+            var offset = i * (MESSAGE_POOL_SIZE / profile.threads);
+            var worker = new Thread(() -> work(offset), "load-driver-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        report("warmup", profile.warmupSeconds);
+        latencies.rotate();
+        processed.reset();
+        measuring = true;
+        var gcBefore = gcMillis();
+        var start = System.nanoTime();
+        var maxHeapUsed = report("measure", profile.seconds);
+        var elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        measuring = false;
+        running = false;
+        latencies.rotate();
+        for (var worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+
+        var rate = processed.sum() / elapsedSeconds;
+        var snapshot = latencies.getSnapshot();
+        var memory = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        System.out.printf(Locale.ROOT, "Messages: %d in %.1f s%n", processed.sum(), elapsedSeconds);
+        System.out.printf(Locale.ROOT, "Throughput: %.0f msg/s%n", rate);
+        System.out.printf(Locale.ROOT, "Processing latency: p50 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+                micros(snapshot.p50), micros(snapshot.p99), micros(snapshot.p999), micros(snapshot.max));
+        System.out.printf(Locale.ROOT, "Heap: max used %d MB, used at end %d MB, committed %d MB, gc %d ms%n",
+                maxHeapUsed / MB, memory.getUsed() / MB, memory.getCommitted() / MB, gcMillis() - gcBefore);
+
+        var passed = true;
+        if (profile.minRate > 0 && rate < profile.minRate) {
+            System.out.printf(Locale.ROOT, "FAILED: throughput %.0f msg/s is lower than min-rate %.0f msg/s%n", rate, profile.minRate);
+            passed = false;
+        }
+        if (profile.maxP99Micros > 0 && micros(snapshot.p99) > profile.maxP99Micros) {
+            System.out.printf(Locale.ROOT, "FAILED: p99 %d us is higher than max-p99-micros %d us%n", micros(snapshot.p99), profile.maxP99Micros);
+            passed = false;
+        }
+        return passed;
+    }
+
+    /**
+     * Paced workers keep their share of configured rate by scheduled send times, when they fall behind they send
+     * without pause until they catch up.
+     */
+    private void work(int offset) {
+        var intervalNanos = profile.rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * profile.threads / profile.rate) : 0;
+        var nextNanos = System.nanoTime();
+        var index = offset;
+        while (running) {
+            if (intervalNanos > 0) {
+                nextNanos += intervalNanos;
+                var waitNanos = nextNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+            }
+            var message = messages.get(index);
+            index = index + 1 == MESSAGE_POOL_SIZE ? 0 : index + 1;
+            var startNanos = System.nanoTime();
+            listener.received(consumer, message);
+            if (measuring) {
+                latencies.record(System.nanoTime() - startNanos);
+                processed.increment();
+            }
+        }
+    }
+
+    /**
+     * Prints progress every second and returns maximum heap usage seen.
+     */
+    private long report(String phase, int seconds) throws InterruptedException {
+        var maxHeapUsed = 0L;
+        var memoryBean = ManagementFactory.getMemoryMXBean();
+        for (int second = 1; second <= seconds; second++) {
+            var before = processed.sum();
+            Thread.sleep(1000);
+            var heapUsed = memoryBean.getHeapMemoryUsage().getUsed();
+            maxHeapUsed = Math.max(maxHeapUsed, heapUsed);
+            if (measuring) {
+                System.out.printf(Locale.ROOT, "%s %3d s: %d msg/s, heap %d MB%n", phase, second, processed.sum() - before, heapUsed / MB);
+            } else {
+                System.out.printf(Locale.ROOT, "%s %3d s: heap %d MB%n", phase, second, heapUsed / MB);
+            }
+        }
+        return maxHeapUsed;
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .sum();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,112 @@
+package net.osomahe.pulsarmonitor.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Settings of {@link LoadDriver} parsed from {@code key=value} arguments, unknown keys are rejected so typo does not
+ * silently run default load.
+ */
+public final class LoadProfile {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        // messages per second of all threads together, 0 means as fast as possible
+        DEFAULTS.put("rate", "0");
+        DEFAULTS.put("threads", "1");
+        DEFAULTS.put("topics", "4");
+        DEFAULTS.put("partitions", "4");
+        DEFAULTS.put("payload-bytes", "1024");
+        // shares of valid and invalid json messages, the rest are binary (not json) messages
+        DEFAULTS.put("valid", "0.8");
+        DEFAULTS.put("invalid", "0.1");
+        // number of distinct values of json path breakdown (message type) of valid messages
+        DEFAULTS.put("cardinality", "10");
+        DEFAULTS.put("schemas", "180");
+        DEFAULTS.put("warmup-seconds", "5");
+        DEFAULTS.put("seconds", "20");
+        // run fails when sustained rate is lower or p99 processing latency higher, 0 disables the check
+        DEFAULTS.put("min-rate", "0");
+        DEFAULTS.put("max-p99-micros", "0");
+    }
+
+    public final double rate;
+
+    public final int threads;
+
+    public final int topics;
+
+    public final int partitions;
+
+    public final int payloadBytes;
+
+    public final double valid;
+
+    public final double invalid;
+
+    public final int cardinality;
+
+    public final int schemas;
+
+    public final int warmupSeconds;
+
+    public final int seconds;
+
+    public final double minRate;
+
+    public final long maxP99Micros;
+
+    private LoadProfile(Map<String, String> values) {
+        this.rate = Double.parseDouble(values.get("rate"));
+        this.threads = Integer.parseInt(values.get("threads"));
+        this.topics = Integer.parseInt(values.get("topics"));
+        this.partitions = Integer.parseInt(values.get("partitions"));
+        this.payloadBytes = Integer.parseInt(values.get("payload-bytes"));
+        this.valid = Double.parseDouble(values.get("valid"));
+        this.invalid = Double.parseDouble(values.get("invalid"));
+        this.cardinality = Integer.parseInt(values.get("cardinality"));
+        this.schemas = Integer.parseInt(values.get("schemas"));
+        this.warmupSeconds = Integer.parseInt(values.get("warmup-seconds"));
+        this.seconds = Integer.parseInt(values.get("seconds"));
+        this.minRate = Double.parseDouble(values.get("min-rate"));
+        this.maxP99Micros = Long.parseLong(values.get("max-p99-micros"));
+        if (threads < 1 || topics < 1 || partitions < 1 || cardinality < 1 || seconds < 1) {
+            throw new IllegalArgumentException("threads, topics, partitions, cardinality and seconds have to be positive");
+        }
+        if (cardinality > schemas) {
+            throw new IllegalArgumentException("cardinality %d cannot be higher than number of schemas %d".formatted(cardinality, schemas));
+        }
+        if (valid < 0 || invalid < 0 || valid + invalid > 1) {
+            throw new IllegalArgumentException("shares of valid %s and invalid %s messages have to be between 0 and 1".formatted(valid, invalid));
+        }
+    }
+
+    /**
+     * Arguments can be passed separately or as one whitespace separated string, blank arguments are ignored.
+     */
+    public static LoadProfile parse(String[] args) {
+        var values = new LinkedHashMap<>(DEFAULTS);
+        for (var arg : args) {
+            for (var setting : arg.strip().split("\\s+")) {
+                if (setting.isEmpty()) {
+                    continue;
+                }
+                var separator = setting.indexOf('=');
+                if (separator < 1 || !DEFAULTS.containsKey(setting.substring(0, separator))) {
+                    throw new IllegalArgumentException("Unknown load setting %s, supported are %s".formatted(setting, DEFAULTS));
+                }
+                values.put(setting.substring(0, separator), setting.substring(separator + 1));
+            }
+        }
+        return new LoadProfile(values);
+    }
+
+    @Override
+    public String toString() {
+        return "rate=%s threads=%d topics=%d partitions=%d payload-bytes=%d valid=%s invalid=%s cardinality=%d schemas=%d warmup-seconds=%d seconds=%d"
+                .formatted(rate == 0 ? "max" : rate, threads, topics, partitions, payloadBytes, valid, invalid, cardinality,
+                        schemas, warmupSeconds, seconds);
+    }
+}
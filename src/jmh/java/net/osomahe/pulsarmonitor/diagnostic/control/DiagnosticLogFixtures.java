@@ -0,0 +1,19 @@
+package net.osomahe.pulsarmonitor.diagnostic.control;
+
+import net.osomahe.pulsarmonitor.ConfigFixtures;
+
+
+/**
+ * Creates {@link DiagnosticLog} outside of CDI container configured from application.properties.
+ */
+public final class DiagnosticLogFixtures {
+
+    private DiagnosticLogFixtures() {
+    }
+
+    public static DiagnosticLog createDiagnosticLog() {
+        var diagnosticLog = ConfigFixtures.configure(new DiagnosticLog());
+        diagnosticLog.init();
+        return diagnosticLog;
+    }
+}
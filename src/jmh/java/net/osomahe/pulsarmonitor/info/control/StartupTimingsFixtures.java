@@ -0,0 +1,20 @@
+package net.osomahe.pulsarmonitor.info.control;
+
+import io.smallrye.metrics.MetricRegistries;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+
+/**
+ * Creates {@link StartupTimings} outside of CDI container.
+ */
+public final class StartupTimingsFixtures {
+
+    private StartupTimingsFixtures() {
+    }
+
+    public static StartupTimings createStartupTimings() {
+        var startupTimings = new StartupTimings();
+        startupTimings.metricRegistry = MetricRegistries.get(MetricRegistry.Type.APPLICATION);
+        return startupTimings;
+    }
+}
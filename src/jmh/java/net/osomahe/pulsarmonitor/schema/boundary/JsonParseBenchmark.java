@@ -0,0 +1,53 @@
+package net.osomahe.pulsarmonitor.schema.boundary;
+
+import net.osomahe.pulsarmonitor.benchmark.BenchmarkCorpus;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Parsing of payload through string and through reader of bytes, payload sizes around threshold of
+ * {@link SchemaValidationFacade#createJsonObject}. Run with {@code -prof gc} to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonParseBenchmark {
+
+    @Param({"256", "4096", "16384", "24576", "65536", "204800"})
+    int payloadSize;
+
+    byte[] json;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        json = BenchmarkCorpus.jsonPayload(BenchmarkCorpus.type(0), payloadSize);
+    }
+
+    @Benchmark
+    public JSONObject parseString() {
+        return SchemaValidationFacade.parseString(json, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public JSONObject parseReader() {
+        return SchemaValidationFacade.parseReader(json, StandardCharsets.UTF_8);
+    }
+}
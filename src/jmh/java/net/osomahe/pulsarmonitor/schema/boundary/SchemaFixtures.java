@@ -0,0 +1,40 @@
+package net.osomahe.pulsarmonitor.schema.boundary;
+
+import io.smallrye.metrics.MetricRegistries;
+import net.osomahe.pulsarmonitor.ConfigFixtures;
+import net.osomahe.pulsarmonitor.diagnostic.control.DiagnosticLogFixtures;
+import net.osomahe.pulsarmonitor.info.control.StartupTimingsFixtures;
+import net.osomahe.pulsarmonitor.schema.control.RejectedMessagesFixtures;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+
+/**
+ * Creates {@link SchemaValidationFacade} outside of CDI container configured from application.properties.
+ */
+public final class SchemaFixtures {
+
+    private SchemaFixtures() {
+    }
+
+    public static SchemaValidationFacade createFacade(Path schemaDir, boolean discriminator, boolean validationCache) {
+        var facade = ConfigFixtures.configure(new SchemaValidationFacade(), Map.of(
+                "monitor.json-schema-dir", schemaDir.toString(),
+                "monitor.schema-discriminator", discriminator ? "type" : "",
+                "monitor.validation-cache.enabled", String.valueOf(validationCache)));
+        facade.metricRegistry = MetricRegistries.get(MetricRegistry.Type.APPLICATION);
+        facade.rejectedMessages = RejectedMessagesFixtures.createRejectedMessages();
+        facade.startupTimings = StartupTimingsFixtures.createStartupTimings();
+        facade.diagnosticLog = DiagnosticLogFixtures.createDiagnosticLog();
+        try {
+            facade.init();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return facade;
+    }
+}
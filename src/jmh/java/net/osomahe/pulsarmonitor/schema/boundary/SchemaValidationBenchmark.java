@@ -0,0 +1,96 @@
+package net.osomahe.pulsarmonitor.schema.boundary;
+
+import net.osomahe.pulsarmonitor.benchmark.BenchmarkCorpus;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Schema matching against N schemas where message matches the first, the last or no schema, and parsing of json and
+ * non json input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaValidationBenchmark {
+
+    @Param({"10", "180"})
+    int schemaCount;
+
+    @Param({"256", "16384", "204800"})
+    int payloadSize;
+
+    @Param({"true", "false"})
+    boolean discriminator;
+
+    SchemaValidationFacade facade;
+
+    JSONObject hitFirst;
+
+    JSONObject hitLast;
+
+    JSONObject noMatch;
+
+    byte[] binary;
+
+    byte[] json;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // aggregated diagnostics are logged at WARN level, keep benchmark output readable
+        java.util.logging.Logger.getLogger("").setLevel(java.util.logging.Level.SEVERE);
+        facade = SchemaFixtures.createFacade(BenchmarkCorpus.writeSchemas(schemaCount), discriminator, false);
+        json = BenchmarkCorpus.jsonPayload(BenchmarkCorpus.type(0), payloadSize);
+        hitFirst = parse(json);
+        hitLast = parse(BenchmarkCorpus.jsonPayload(BenchmarkCorpus.type(schemaCount - 1), payloadSize));
+        noMatch = parse(BenchmarkCorpus.jsonPayload(BenchmarkCorpus.NO_MATCH_TYPE, payloadSize));
+        binary = BenchmarkCorpus.binaryPayload(payloadSize);
+    }
+
+    private JSONObject parse(byte[] payload) {
+        return new JSONObject(new String(payload, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public Optional<?> findSchemaRecordHitFirst() {
+        return facade.findSchemaRecord(hitFirst);
+    }
+
+    @Benchmark
+    public Optional<?> findSchemaRecordHitLast() {
+        return facade.findSchemaRecord(hitLast);
+    }
+
+    @Benchmark
+    public Optional<?> findSchemaRecordNoMatch() {
+        return facade.findSchemaRecord(noMatch);
+    }
+
+    @Benchmark
+    public Optional<?> createJsonObject() {
+        return facade.createJsonObject("persistent://public/default/benchmark", json, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Optional<?> createJsonObjectNonJson() {
+        return facade.createJsonObject("persistent://public/default/benchmark", binary, StandardCharsets.UTF_8);
+    }
+}
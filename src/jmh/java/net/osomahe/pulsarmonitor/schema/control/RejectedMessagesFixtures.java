@@ -0,0 +1,19 @@
+package net.osomahe.pulsarmonitor.schema.control;
+
+import net.osomahe.pulsarmonitor.ConfigFixtures;
+
+
+/**
+ * Creates {@link RejectedMessages} outside of CDI container configured from application.properties.
+ */
+public final class RejectedMessagesFixtures {
+
+    private RejectedMessagesFixtures() {
+    }
+
+    public static RejectedMessages createRejectedMessages() {
+        var rejectedMessages = ConfigFixtures.configure(new RejectedMessages());
+        rejectedMessages.init();
+        return rejectedMessages;
+    }
+}
@@ -0,0 +1,117 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import io.smallrye.metrics.MetricRegistries;
+import net.osomahe.pulsarmonitor.ConfigFixtures;
+import net.osomahe.pulsarmonitor.diagnostic.control.DiagnosticLogFixtures;
+import net.osomahe.pulsarmonitor.schema.boundary.SchemaValidationFacade;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Creates {@link TopicsListener} outside of CDI container configured from application.properties and
+ * stub implementations of Pulsar {@link Consumer} and {@link Message}.
+ */
+public final class ListenerFixtures {
+
+    private ListenerFixtures() {
+    }
+
+    public static TopicsListener createListener(SchemaValidationFacade facadeSchema, boolean latencies) {
+        return createListener(facadeSchema, latencies, false);
+    }
+
+    /**
+     * Duplicates are detected by payload identity (stub message has no sequence id) and still counted and validated.
+     * Schema lookup of content sniffing is disabled, so that only the facade decides about schemas.
+     */
+    public static TopicsListener createListener(SchemaValidationFacade facadeSchema, boolean latencies, boolean duplicates) {
+        var metricRegistry = MetricRegistries.get(MetricRegistry.Type.APPLICATION);
+
+        var jsonPathBreakdowns = ConfigFixtures.configure(new JsonPathBreakdowns());
+        jsonPathBreakdowns.diagnosticLog = DiagnosticLogFixtures.createDiagnosticLog();
+        jsonPathBreakdowns.init();
+
+        var cardinalityGuard = ConfigFixtures.configure(new BreakdownCardinalityGuard());
+        cardinalityGuard.metricRegistry = metricRegistry;
+        cardinalityGuard.jsonPathBreakdowns = jsonPathBreakdowns;
+
+        var validationSampler = ConfigFixtures.configure(new ValidationSampler());
+        validationSampler.metricRegistry = metricRegistry;
+        validationSampler.init();
+
+        var messageCounters = ConfigFixtures.configure(new MessageCounters());
+        messageCounters.metricRegistry = metricRegistry;
+        messageCounters.jsonPathBreakdowns = jsonPathBreakdowns;
+        messageCounters.cardinalityGuard = cardinalityGuard;
+        messageCounters.validationSampler = validationSampler;
+
+        var validationPipeline = ConfigFixtures.configure(new ValidationPipeline());
+
+        var stageLatencies = ConfigFixtures.configure(new StageLatencies(), Map.of(
+                "monitor.latency.enabled", String.valueOf(latencies)));
+        stageLatencies.metricRegistry = metricRegistry;
+        stageLatencies.init();
+
+        var contentSniffer = ConfigFixtures.configure(new ContentSniffer(), Map.of(
+                "monitor.content-sniffing.schema-lookup", "false"));
+        contentSniffer.init();
+
+        var validityWindows = ConfigFixtures.configure(new ValidityWindows());
+        validityWindows.metricRegistry = metricRegistry;
+
+        var duplicateDetector = ConfigFixtures.configure(new DuplicateDetector(), Map.of(
+                "monitor.duplicates.enabled", String.valueOf(duplicates)));
+        duplicateDetector.metricRegistry = metricRegistry;
+        duplicateDetector.init();
+
+        var listener = ConfigFixtures.configure(new TopicsListener());
+        listener.facadeSchema = facadeSchema;
+        listener.messageCounters = messageCounters;
+        listener.validationPipeline = validationPipeline;
+        listener.stageLatencies = stageLatencies;
+        listener.jsonPathBreakdowns = jsonPathBreakdowns;
+        listener.contentSniffer = contentSniffer;
+        listener.validationSampler = validationSampler;
+        listener.validityWindows = validityWindows;
+        listener.duplicateDetector = duplicateDetector;
+        listener.init();
+        return listener;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Consumer<byte[]> stubConsumer() {
+        return (Consumer<byte[]>) Proxy.newProxyInstance(Consumer.class.getClassLoader(), new Class<?>[]{Consumer.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "acknowledgeAsync" -> CompletableFuture.completedFuture(null);
+                    case "getTopic" -> "persistent://public/default/benchmark";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Message<byte[]> stubMessage(String topicName, byte[] value) {
+        var publishTime = System.currentTimeMillis();
+        return (Message<byte[]>) Proxy.newProxyInstance(Message.class.getClassLoader(), new Class<?>[]{Message.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getValue", "getData" -> value;
+                    case "getTopicName" -> topicName;
+                    case "getPublishTime" -> publishTime;
+                    case "getEventTime" -> 0L;
+                    case "getMessageId" -> MessageId.earliest;
+                    case "getSequenceId" -> -1L;
+                    case "hasKey" -> false;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+}
@@ -0,0 +1,95 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import net.osomahe.pulsarmonitor.benchmark.BenchmarkCorpus;
+import net.osomahe.pulsarmonitor.schema.boundary.SchemaFixtures;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Whole listener path with stub consumer and message for valid, invalid and binary payload, with and without duplicate
+ * detection, and json path breakdown extraction alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopicsListenerBenchmark {
+
+    @Param({"180"})
+    int schemaCount;
+
+    @Param({"256", "16384", "204800"})
+    int payloadSize;
+
+    @Param({"false", "true"})
+    boolean duplicates;
+
+    TopicsListener listener;
+
+    Consumer<byte[]> consumer;
+
+    Message<byte[]> validMessage;
+
+    Message<byte[]> invalidMessage;
+
+    Message<byte[]> binaryMessage;
+
+    byte[] payload;
+
+    Optional<JSONObject> oJsonObject;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        java.util.logging.Logger.getLogger("").setLevel(java.util.logging.Level.SEVERE);
+        var facade = SchemaFixtures.createFacade(BenchmarkCorpus.writeSchemas(schemaCount), true, false);
+        listener = ListenerFixtures.createListener(facade, true, duplicates);
+        consumer = ListenerFixtures.stubConsumer();
+        payload = BenchmarkCorpus.jsonPayload(BenchmarkCorpus.type(schemaCount / 2), payloadSize);
+        validMessage = ListenerFixtures.stubMessage("persistent://public/default/benchmark-partition-0", payload);
+        invalidMessage = ListenerFixtures.stubMessage("persistent://public/default/benchmark-partition-1",
+                BenchmarkCorpus.jsonPayload(BenchmarkCorpus.NO_MATCH_TYPE, payloadSize));
+        binaryMessage = ListenerFixtures.stubMessage("persistent://public/default/benchmark-partition-2",
+                BenchmarkCorpus.binaryPayload(payloadSize));
+        oJsonObject = Optional.of(new JSONObject(new String(payload, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public void receivedValid() {
+        listener.received(consumer, validMessage);
+    }
+
+    @Benchmark
+    public void receivedInvalid() {
+        listener.received(consumer, invalidMessage);
+    }
+
+    @Benchmark
+    public void receivedBinary() {
+        listener.received(consumer, binaryMessage);
+    }
+
+    @Benchmark
+    public String[] extractBreakdowns() {
+        return listener.jsonPathBreakdowns.extract("persistent://public/default/benchmark", oJsonObject, payload);
+    }
+}
@@ -0,0 +1,207 @@
+package net.osomahe.pulsarmonitor.diagnostic.control;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Aggregates per message diagnostics (invalid json, no matching schema, unreadable json path) so bad messages cannot
+ * flood the log. Reporting thread only increments counter of (topic, reason) and keeps the first message of the
+ * interval, background thread logs one warning per (topic, reason) and interval with number of suppressed messages.
+ * Payload of the first message is decoded and truncated only when it is logged.
+ * <p>
+ * Entry without reports in the whole interval is removed, so the limit of entries applies to (topic, reason) reported
+ * recently. Removal marks the count, reporter which still holds removed entry creates new one.
+ */
+@ApplicationScoped
+public class DiagnosticLog implements DiagnosticReporter {
+
+    private static final String OTHER_TOPICS = "other";
+
+    private static final long REMOVED = -1;
+
+    @Inject
+    Logger log;
+
+    @ConfigProperty(name = "monitor.diagnostic-log.interval-ms")
+    Long intervalMs;
+
+    @ConfigProperty(name = "monitor.diagnostic-log.max-payload-bytes")
+    Integer maxPayloadBytes;
+
+    @ConfigProperty(name = "monitor.diagnostic-log.max-entries")
+    Integer maxEntries;
+
+    @ConfigProperty(name = "monitor.message-encoding")
+    String messageEncoding;
+
+    private final Map<String, Map<String, Entry>> topics = new ConcurrentHashMap<>();
+
+    private final AtomicInteger entryCount = new AtomicInteger();
+
+    private Charset messageCharset;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init() {
+        messageCharset = Charset.forName(messageEncoding);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "diagnostic-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts diagnostic of message, detail and payload are kept only for the first message of (topic, reason) in the
+     * current interval. Topics above configured number of entries are reported together as {@code other}.
+     */
+    @Override
+    public void report(String topic, String reason, String detail, byte[] payload) {
+        var entry = findEntry(topic, reason);
+        while (!entry.increment()) {
+            entry = findEntry(topic, reason);
+        }
+        if (entry.first.get() == null) {
+            entry.first.compareAndSet(null, new First(detail, payload));
+        }
+    }
+
+    private Entry findEntry(String topic, String reason) {
+        var reasons = topics.get(topic);
+        var entry = reasons == null ? null : reasons.get(reason);
+        if (entry != null) {
+            return entry;
+        }
+        if (reasons == null && entryCount.get() >= maxEntries) {
+            topic = OTHER_TOPICS;
+            reasons = topics.get(topic);
+            entry = reasons == null ? null : reasons.get(reason);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        // created under lock of topic, so that flush does not remove its map meanwhile
+        var created = new AtomicReference<Entry>();
+        topics.compute(topic, (t, topicReasons) -> {
+            var result = topicReasons == null ? new ConcurrentHashMap<String, Entry>() : topicReasons;
+            created.set(result.computeIfAbsent(reason, r -> {
+                entryCount.incrementAndGet();
+                return new Entry();
+            }));
+            return result;
+        });
+        return created.get();
+    }
+
+    /**
+     * Logs every (topic, reason) reported since the previous flush and removes entries without reports.
+     */
+    synchronized void flush() {
+        try {
+            topics.forEach((topic, reasons) -> {
+                reasons.forEach((reason, entry) -> flush(topic, reasons, reason, entry));
+                topics.computeIfPresent(topic, (t, topicReasons) -> topicReasons.isEmpty() ? null : topicReasons);
+            });
+        } catch (Exception e) {
+            log.errorf(e, "Cannot log aggregated diagnostics");
+        }
+    }
+
+    private void flush(String topic, Map<String, Entry> reasons, String reason, Entry entry) {
+        var count = entry.count.getAndSet(0);
+        if (count == 0) {
+            if (entry.count.compareAndSet(0, REMOVED)) {
+                reasons.remove(reason, entry);
+                entryCount.decrementAndGet();
+            }
+            return;
+        }
+        // first message can be missing when it was reported during flush, it is then logged next time
+        var first = entry.first.getAndSet(null);
+        log.warnf("%s on topic %s: %d messages in last %d ms (%d suppressed), first: %s payload: %s",
+                reason, topic, count, intervalMs, count - 1,
+                first == null ? null : first.detail, first == null ? null : render(first.payload));
+    }
+
+    private String render(byte[] payload) {
+        if (payload == null) {
+            return null;
+        }
+        var length = Math.min(payload.length, maxPayloadBytes);
+        var text = new String(payload, 0, length, messageCharset);
+        var builder = new StringBuilder(text.length() + 32);
+        var whitespace = false;
+        for (int i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (!whitespace) {
+                    builder.append(' ');
+                }
+                whitespace = true;
+            } else {
+                builder.append(c);
+                whitespace = false;
+            }
+        }
+        if (length < payload.length) {
+            builder.append("... (").append(payload.length).append(" bytes)");
+        }
+        return builder.toString();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+        flush();
+    }
+
+    private static final class Entry {
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicReference<First> first = new AtomicReference<>();
+
+        /**
+         * Counts message unless the entry was removed.
+         */
+        private boolean increment() {
+            long current;
+            do {
+                current = count.get();
+                if (current == REMOVED) {
+                    return false;
+                }
+            } while (!count.compareAndSet(current, current + 1));
+            return true;
+        }
+    }
+
+    private static final class First {
+
+        private final String detail;
+
+        private final byte[] payload;
+
+        private First(String detail, byte[] payload) {
+            this.detail = detail;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package net.osomahe.pulsarmonitor.diagnostic.control;
+
+
+/**
+ * Receives per message diagnostics. Live messages are reported to {@link DiagnosticLog}, scans of topic history use
+ * {@link #IGNORE} because their results already count invalid messages and they must not flood the shared log.
+ */
+@FunctionalInterface
+public interface DiagnosticReporter {
+
+    DiagnosticReporter IGNORE = (topic, reason, detail, payload) -> {
+    };
+
+    void report(String topic, String reason, String detail, byte[] payload);
+}
@@ -1,25 +1,46 @@
 package net.osomahe.pulsarmonitor.health.control;
 
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import net.osomahe.pulsarmonitor.subscribe.control.ConsumerActivity;
+import net.osomahe.pulsarmonitor.subscribe.control.TopicSubscriber;
 import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.PulsarClient;
-import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.api.Reader;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.eclipse.microprofile.faulttolerance.Timeout;
 import org.eclipse.microprofile.health.HealthCheck;
 import org.eclipse.microprofile.health.HealthCheckResponse;
 import org.eclipse.microprofile.health.Readiness;
 import org.jboss.logging.Logger;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Readiness is computed in background from connection of health reader and consumers of all topics patterns, probe
+ * only reads the last snapshot and never waits for Pulsar.
+ */
 @Readiness
 @ApplicationScoped
 public class PulsarReadinessCheck implements HealthCheck {
 
     private static final Logger log = Logger.getLogger(PulsarReadinessCheck.class);
 
+    private static final String NAME = "Apache Pulsar connection health check";
+
+    // snapshot older than this number of intervals means the background check itself is stuck
+    private static final int STALE_INTERVALS = 10;
+
     @ConfigProperty(name = "pulsar.service-url")
     String serviceUrl;
 
@@ -29,31 +50,189 @@ public class PulsarReadinessCheck implements HealthCheck {
     @ConfigProperty(name = "pulsar.health.topic")
     String healthTopic;
 
+    @ConfigProperty(name = "monitor.readiness.interval-ms")
+    Long intervalMs;
+
+    @ConfigProperty(name = "monitor.readiness.stall-seconds")
+    Long stallSeconds;
+
     @Inject
     PulsarClient pulsarClient;
 
-    private Reader<byte[]> reader;
+    @Inject
+    TopicSubscriber topicSubscriber;
+
+    private volatile Snapshot snapshot;
+
+    private volatile Reader<byte[]> reader;
 
+    private volatile boolean readerPending;
+
+    private final Map<ConsumerActivity, ActivityState> activityStates = new IdentityHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    void startup(@Observes StartupEvent event) {
+        snapshot = new Snapshot(System.nanoTime(), false, false, Map.of(), List.of());
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "pulsar-readiness");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
 
     @Override
-    @Timeout(500)
     public HealthCheckResponse call() {
-        if (reader == null) {
-            try {
-                reader = pulsarClient.newReader().readerName(readerName).topic(healthTopic).startMessageId(MessageId.earliest).create();
-            } catch (PulsarClientException e) {
-                log.warnf("Cannot connect to Apache Pulsar on url: %s", serviceUrl);
+        var current = snapshot;
+        if (current == null) {
+            return HealthCheckResponse.builder().name(NAME).withData("pulsarUrl", serviceUrl).down().build();
+        }
+        var stale = System.nanoTime() - current.checkedNanos > TimeUnit.MILLISECONDS.toNanos(intervalMs * STALE_INTERVALS);
+        var builder = HealthCheckResponse.builder()
+                .name(NAME)
+                .withData("pulsarUrl", serviceUrl)
+                .withData("connected", current.readerConnected)
+                .withData("stalledPatterns", String.join(",", current.stalledPatterns));
+        current.patterns.forEach(builder::withData);
+        if (stale) {
+            builder.withData("stale", true);
+        }
+        return builder.status(current.ready && !stale).build();
+    }
+
+    private void refresh() {
+        try {
+            var readerConnected = checkReader();
+            var now = System.nanoTime();
+            var patterns = new LinkedHashMap<String, PatternState>();
+            for (var activity : topicSubscriber.getConsumerActivities()) {
+                var state = activityStates.computeIfAbsent(activity, a -> new ActivityState(now));
+                state.update(activity, now);
+                patterns.computeIfAbsent(activity.topicsPattern, p -> new PatternState()).add(activity, state, now);
             }
+            var consumersConnected = patterns.values().stream().allMatch(pattern -> pattern.connected);
+            var stalledPatterns = new ArrayList<String>();
+            var patternData = new LinkedHashMap<String, String>();
+            patterns.forEach((topicsPattern, pattern) -> {
+                if (pattern.connected && pattern.idleNanos > TimeUnit.SECONDS.toNanos(stallSeconds)) {
+                    stalledPatterns.add(topicsPattern);
+                }
+                patternData.put(topicsPattern, pattern.toString());
+            });
+            snapshot = new Snapshot(now, readerConnected && consumersConnected, readerConnected, patternData, stalledPatterns);
+        } catch (Exception e) {
+            log.errorf(e, "Cannot refresh readiness of Apache Pulsar on url: %s", serviceUrl);
         }
-        boolean connected = reader != null && reader.isConnected();
-        if (!connected) {
+    }
+
+    /**
+     * Health reader is created asynchronously, disconnected reader is closed and created again in next refresh.
+     */
+    private boolean checkReader() {
+        var current = reader;
+        if (current != null && current.isConnected()) {
+            return true;
+        }
+        if (current != null) {
             reader = null;
+            current.closeAsync();
+        }
+        if (!readerPending) {
+            readerPending = true;
+            pulsarClient.newReader().readerName(readerName).topic(healthTopic).startMessageId(MessageId.earliest).createAsync()
+                    .whenComplete((created, e) -> {
+                        if (e != null) {
+                            log.warnf("Cannot connect to Apache Pulsar on url: %s", serviceUrl);
+                        }
+                        reader = created;
+                        readerPending = false;
+                    });
+        }
+        return false;
+    }
+
+    void shutdown(@Observes ShutdownEvent event) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        var current = reader;
+        if (current != null) {
+            current.closeAsync();
+        }
+    }
+
+    private static final class ActivityState {
+
+        private long lastReceived;
+
+        private long lastCheckNanos;
+
+        private long lastReceiveNanos;
+
+        private double receiveRate;
+
+        private ActivityState(long nowNanos) {
+            this.lastCheckNanos = nowNanos;
+            this.lastReceiveNanos = nowNanos;
+        }
+
+        private void update(ConsumerActivity activity, long nowNanos) {
+            var received = activity.getReceived();
+            var elapsedNanos = nowNanos - lastCheckNanos;
+            if (elapsedNanos > 0) {
+                receiveRate = (received - lastReceived) * 1e9 / elapsedNanos;
+            }
+            if (received != lastReceived) {
+                lastReceiveNanos = nowNanos;
+            }
+            lastReceived = received;
+            lastCheckNanos = nowNanos;
+        }
+    }
+
+    private static final class PatternState {
+
+        private int consumers;
+
+        private boolean connected = true;
+
+        private double receiveRate;
+
+        private long idleNanos = Long.MAX_VALUE;
+
+        private void add(ConsumerActivity activity, ActivityState state, long nowNanos) {
+            consumers++;
+            connected &= activity.isConnected();
+            receiveRate += state.receiveRate;
+            idleNanos = Math.min(idleNanos, nowNanos - state.lastReceiveNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "consumers=%d connected=%s receiveRate=%.1f/s lastReceivedSecondsAgo=%d",
+                    consumers, connected, receiveRate, TimeUnit.NANOSECONDS.toSeconds(idleNanos));
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final long checkedNanos;
+
+        private final boolean ready;
+
+        private final boolean readerConnected;
+
+        private final Map<String, String> patterns;
+
+        private final List<String> stalledPatterns;
+
+        private Snapshot(long checkedNanos, boolean ready, boolean readerConnected, Map<String, String> patterns, List<String> stalledPatterns) {
+            this.checkedNanos = checkedNanos;
+            this.ready = ready;
+            this.readerConnected = readerConnected;
+            this.patterns = patterns;
+            this.stalledPatterns = stalledPatterns;
         }
-        return HealthCheckResponse.builder()
-                .name("Apache Pulsar connection health check")
-                .withData("pulsarUrl", serviceUrl)
-                .withData("connected", connected)
-                .status(connected)
-                .build();
     }
 }
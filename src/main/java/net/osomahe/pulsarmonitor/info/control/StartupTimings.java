@@ -0,0 +1,56 @@
+package net.osomahe.pulsarmonitor.info.control;
+
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Durations of startup phases exposed as {@code startupPhaseDuration} gauges tagged by phase.
+ */
+@ApplicationScoped
+public class StartupTimings {
+
+    public static final String SCHEMA_COMPILATION = "schemaCompilation";
+
+    public static final String SUBSCRIPTION = "subscription";
+
+    public static final String UNTIL_SUBSCRIBED = "untilSubscribed";
+
+    private static final Metadata STARTUP_METADATA = Metadata.builder()
+            .withName("startupPhaseDuration")
+            .withDescription("Duration of application startup phases, untilSubscribed is measured from process start")
+            .withUnit(MetricUnits.SECONDS)
+            .build();
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    private final Map<String, AtomicLong> phaseNanos = new ConcurrentHashMap<>();
+
+    public void record(String phase, long nanos) {
+        phaseNanos.computeIfAbsent(phase, this::register).set(nanos);
+    }
+
+    /**
+     * Records time since process start as given phase.
+     */
+    public void recordUptime(String phase) {
+        record(phase, TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime()));
+    }
+
+    private AtomicLong register(String phase) {
+        var nanos = new AtomicLong();
+        metricRegistry.gauge(STARTUP_METADATA, () -> nanos.get() / 1_000_000_000d, new Tag("phase", phase));
+        return nanos;
+    }
+}
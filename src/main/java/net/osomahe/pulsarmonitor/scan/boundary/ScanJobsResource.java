@@ -0,0 +1,79 @@
+package net.osomahe.pulsarmonitor.scan.boundary;
+
+import net.osomahe.pulsarmonitor.scan.control.ScanJobs;
+import net.osomahe.pulsarmonitor.subscribe.entity.ReaderFilter;
+
+import javax.annotation.security.PermitAll;
+import javax.inject.Inject;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+@Path("/scan-jobs")
+@Produces(MediaType.APPLICATION_JSON)
+public class ScanJobsResource {
+
+    @Inject
+    ScanJobs scanJobs;
+
+    @POST
+    @PermitAll
+    public Response startScanJob(@QueryParam("topic") String topic,
+                                 @QueryParam("key") String key,
+                                 @QueryParam("from") Long fromEpochSecs,
+                                 @QueryParam("to") Long toEpochSecs) {
+        if (topic == null || topic.isBlank()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("errorMessage", "Query parameter topic is required"))
+                    .build();
+        }
+        var filter = ReaderFilter.builder()
+                .withTopicName(topic)
+                .withKey(key)
+                .withFromEpochSecs(fromEpochSecs)
+                .withToEpochSecs(toEpochSecs == null ? System.currentTimeMillis() / 1000 : toEpochSecs)
+                .build();
+        return scanJobs.start(filter)
+                .map(report -> Response.status(Response.Status.ACCEPTED).entity(report).build())
+                .orElseGet(() -> Response.status(Response.Status.TOO_MANY_REQUESTS)
+                        .entity(Map.of("errorMessage", "All kept scan jobs are running, see monitor.scan.max-jobs"))
+                        .build());
+    }
+
+    @GET
+    @PermitAll
+    public Response getScanJobs() {
+        return Response.ok(scanJobs.findReports()).build();
+    }
+
+    @GET
+    @PermitAll
+    @Path("/{id}")
+    public Response getScanJob(@PathParam("id") String id) {
+        return scanJobs.findReport(id)
+                .map(report -> Response.ok(report).build())
+                .orElseGet(() -> notFound(id));
+    }
+
+    @DELETE
+    @PermitAll
+    @Path("/{id}")
+    public Response cancelScanJob(@PathParam("id") String id) {
+        return scanJobs.cancel(id)
+                .map(report -> Response.ok(report).build())
+                .orElseGet(() -> notFound(id));
+    }
+
+    private Response notFound(String id) {
+        return Response.status(Response.Status.NOT_FOUND)
+                .entity(Map.of("errorMessage", "Scan job " + id + " does not exist"))
+                .build();
+    }
+}
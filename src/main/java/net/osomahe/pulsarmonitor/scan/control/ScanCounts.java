@@ -0,0 +1,50 @@
+package net.osomahe.pulsarmonitor.scan.control;
+
+import net.osomahe.pulsarmonitor.schema.entity.RejectedMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Counts of scanned messages, partition scan fills its own instance without locking and merges it into
+ * {@link ScanJob} after every few messages.
+ */
+class ScanCounts {
+
+    long messages;
+
+    long rejected;
+
+    final Map<String, Long> contentTypes = new HashMap<>();
+
+    final Map<String, Long> schemas = new HashMap<>();
+
+    final Map<String, Long> rejectedByClosestSchema = new HashMap<>();
+
+    /**
+     * Values of breakdown tag on position i, in the same order as breakdown tag names.
+     */
+    final List<Map<String, Long>> breakdowns;
+
+    final List<RejectedMessage> samples = new ArrayList<>();
+
+    ScanCounts(int breakdownCount) {
+        breakdowns = new ArrayList<>(breakdownCount);
+        for (int i = 0; i < breakdownCount; i++) {
+            breakdowns.add(new HashMap<>());
+        }
+    }
+
+    static void increment(Map<String, Long> counts, String value) {
+        counts.merge(value, 1L, Long::sum);
+    }
+
+    void addBreakdowns(String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            increment(breakdowns.get(i), values[i]);
+        }
+    }
+}
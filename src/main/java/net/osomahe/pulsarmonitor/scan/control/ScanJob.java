@@ -0,0 +1,119 @@
+package net.osomahe.pulsarmonitor.scan.control;
+
+import net.osomahe.pulsarmonitor.scan.entity.ScanReport;
+import net.osomahe.pulsarmonitor.scan.entity.ScanStatus;
+import net.osomahe.pulsarmonitor.subscribe.control.BreakdownCardinalityGuard;
+import net.osomahe.pulsarmonitor.subscribe.entity.ReaderFilter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+
+
+/**
+ * State of one scan job, counts of all partitions are merged here. Number of distinct values of every breakdown tag
+ * is limited, further values are counted as {@code other}.
+ */
+class ScanJob {
+
+    final String id;
+
+    final ReaderFilter filter;
+
+    final long startedAt = System.currentTimeMillis();
+
+    private final String[] tagNames;
+
+    private final int maxSamples;
+
+    private final int maxBreakdownValues;
+
+    private final ScanCounts totals;
+
+    private int partitions;
+
+    private volatile boolean cancelled;
+
+    private volatile ScanStatus status = ScanStatus.RUNNING;
+
+    private volatile Long finishedAt;
+
+    private volatile String errorMessage;
+
+    ScanJob(String id, ReaderFilter filter, String[] tagNames, int maxSamples, int maxBreakdownValues) {
+        this.id = id;
+        this.filter = filter;
+        this.tagNames = tagNames;
+        this.maxSamples = maxSamples;
+        this.maxBreakdownValues = maxBreakdownValues;
+        this.totals = new ScanCounts(tagNames.length);
+    }
+
+    ScanCounts newCounts() {
+        return new ScanCounts(tagNames.length);
+    }
+
+    int getMaxSamples() {
+        return maxSamples;
+    }
+
+    synchronized void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    synchronized void merge(ScanCounts counts) {
+        totals.messages += counts.messages;
+        totals.rejected += counts.rejected;
+        counts.contentTypes.forEach((value, count) -> totals.contentTypes.merge(value, count, Long::sum));
+        counts.schemas.forEach((value, count) -> totals.schemas.merge(value, count, Long::sum));
+        counts.rejectedByClosestSchema.forEach((value, count) -> totals.rejectedByClosestSchema.merge(value, count, Long::sum));
+        for (int i = 0; i < tagNames.length; i++) {
+            var breakdownTotals = totals.breakdowns.get(i);
+            counts.breakdowns.get(i).forEach((value, count) -> {
+                var bounded = breakdownTotals.containsKey(value) || breakdownTotals.size() < maxBreakdownValues
+                        ? value : BreakdownCardinalityGuard.OTHER;
+                breakdownTotals.merge(bounded, count, Long::sum);
+            });
+        }
+        for (var sample : counts.samples) {
+            if (totals.samples.size() >= maxSamples) {
+                break;
+            }
+            totals.samples.add(sample);
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isRunning() {
+        return status == ScanStatus.RUNNING;
+    }
+
+    void finish(Throwable e) {
+        if (e != null) {
+            var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            errorMessage = cause.getMessage();
+        }
+        finishedAt = System.currentTimeMillis();
+        status = cancelled ? ScanStatus.CANCELLED : e != null ? ScanStatus.FAILED : ScanStatus.FINISHED;
+    }
+
+    synchronized ScanReport toReport() {
+        var breakdowns = new LinkedHashMap<String, Map<String, Long>>();
+        for (int i = 0; i < tagNames.length; i++) {
+            breakdowns.put(tagNames[i], new TreeMap<>(totals.breakdowns.get(i)));
+        }
+        return new ScanReport(id, filter.getTopicName(), filter.getKey(), filter.getFromEpochSecs(), filter.getToEpochSecs(),
+                status, startedAt, finishedAt, partitions, totals.messages, totals.rejected,
+                new TreeMap<>(totals.contentTypes), new TreeMap<>(totals.schemas),
+                new TreeMap<>(totals.rejectedByClosestSchema), breakdowns, List.copyOf(totals.samples), errorMessage);
+    }
+}
@@ -0,0 +1,227 @@
+package net.osomahe.pulsarmonitor.scan.control;
+
+import net.osomahe.pulsarmonitor.diagnostic.control.DiagnosticReporter;
+import net.osomahe.pulsarmonitor.scan.entity.ScanReport;
+import net.osomahe.pulsarmonitor.schema.boundary.SchemaValidationFacade;
+import net.osomahe.pulsarmonitor.schema.entity.RejectedMessage;
+import net.osomahe.pulsarmonitor.subscribe.control.ContentSniffer;
+import net.osomahe.pulsarmonitor.subscribe.control.JsonPathBreakdowns;
+import net.osomahe.pulsarmonitor.subscribe.entity.ContentType;
+import net.osomahe.pulsarmonitor.subscribe.entity.PulsarReaderException;
+import net.osomahe.pulsarmonitor.subscribe.entity.ReaderFilter;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.json.JSONObject;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Scans history of topic between given publish times and reports how its messages would be classified, validated and
+ * broken down. Every partition is read by its own non-durable {@link org.apache.pulsar.client.api.Reader} on dedicated
+ * thread pool, so live subscription cursor, live metrics, validation cache and rejected messages are not touched.
+ */
+@ApplicationScoped
+public class ScanJobs {
+
+    private static final String UNKNOWN = "unknown";
+
+    // partition counts are merged into job after this number of messages so running job reports progress
+    private static final int MERGE_MESSAGES = 1000;
+
+    @Inject
+    Logger log;
+
+    @Inject
+    PulsarClient pulsarClient;
+
+    @Inject
+    SchemaValidationFacade facadeSchema;
+
+    @Inject
+    ContentSniffer contentSniffer;
+
+    @Inject
+    JsonPathBreakdowns jsonPathBreakdowns;
+
+    @ConfigProperty(name = "monitor.scan.threads")
+    Integer threads;
+
+    @ConfigProperty(name = "monitor.scan.max-jobs")
+    Integer maxJobs;
+
+    @ConfigProperty(name = "monitor.scan.max-samples")
+    Integer maxSamples;
+
+    @ConfigProperty(name = "monitor.scan.max-breakdown-values")
+    Integer maxBreakdownValues;
+
+    @ConfigProperty(name = "monitor.rejected-messages.max-payload-bytes")
+    Integer maxPayloadBytes;
+
+    @ConfigProperty(name = "monitor.message-encoding")
+    String messageEncoding;
+
+    private final AtomicLong jobNumber = new AtomicLong();
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final Map<String, ScanJob> jobs = new LinkedHashMap<>();
+
+    private ExecutorService executor;
+
+    private Charset messageCharset;
+
+    @PostConstruct
+    void init() {
+        messageCharset = Charset.forName(messageEncoding);
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "scan-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts scan of all partitions of filtered topic, returns empty when limit of kept jobs is reached and all of them
+     * are still running. The oldest finished job is forgotten to make room for new one.
+     */
+    public synchronized Optional<ScanReport> start(ReaderFilter filter) {
+        var finishedIds = jobs.values().stream().filter(job -> !job.isRunning()).map(job -> job.id).toList();
+        for (int i = 0; i < finishedIds.size() && jobs.size() >= maxJobs; i++) {
+            jobs.remove(finishedIds.get(i));
+        }
+        if (jobs.size() >= maxJobs) {
+            return Optional.empty();
+        }
+        var job = new ScanJob(String.valueOf(jobNumber.incrementAndGet()), filter, jsonPathBreakdowns.getTagNames(), maxSamples, maxBreakdownValues);
+        jobs.put(job.id, job);
+        log.infof("Starting scan job %s with filter: %s", job.id, filter);
+        pulsarClient.getPartitionsForTopic(filter.getTopicName())
+                .thenCompose(partitionTopics -> {
+                    job.setPartitions(partitionTopics.size());
+                    return CompletableFuture.allOf(partitionTopics.stream()
+                            .map(partitionTopic -> CompletableFuture.runAsync(() -> scanPartition(job, partitionTopic), executor))
+                            .toArray(CompletableFuture[]::new));
+                })
+                .whenComplete((result, e) -> {
+                    job.finish(e);
+                    var report = job.toReport();
+                    log.infof("Scan job %s finished with status %s after %d ms, scanned %d messages", job.id, report.status,
+                            report.finishedAt - report.startedAt, report.messages);
+                });
+        return Optional.of(job.toReport());
+    }
+
+    public synchronized List<ScanReport> findReports() {
+        return jobs.values().stream().map(ScanJob::toReport).toList();
+    }
+
+    public synchronized Optional<ScanReport> findReport(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(ScanJob::toReport);
+    }
+
+    /**
+     * Stops reading of all partitions, counts scanned until then are kept in report.
+     */
+    public synchronized Optional<ScanReport> cancel(String id) {
+        var job = jobs.get(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        job.cancel();
+        return Optional.of(job.toReport());
+    }
+
+    private void scanPartition(ScanJob job, String partitionTopic) {
+        var filter = job.filter;
+        var toEpochMillis = filter.getToEpochSecs() == null ? null : filter.getToEpochSecs() * 1000;
+        var counts = job.newCounts();
+        try (var reader = pulsarClient.newReader().topic(partitionTopic).startMessageId(MessageId.earliest).create()) {
+            if (filter.getFromEpochSecs() != null) {
+                reader.seek(filter.getFromEpochSecs() * 1000);
+            }
+            while (!job.isCancelled() && reader.hasMessageAvailable()) {
+                var message = reader.readNext(1, TimeUnit.SECONDS);
+                if (message == null) {
+                    continue;
+                }
+                if (toEpochMillis != null && message.getPublishTime() > toEpochMillis) {
+                    break;
+                }
+                if (filter.getKey() != null && !filter.getKey().equals(message.getKey())) {
+                    continue;
+                }
+                scanMessage(job, partitionTopic, message, counts);
+                if (counts.messages >= MERGE_MESSAGES) {
+                    job.merge(counts);
+                    counts = job.newCounts();
+                }
+            }
+        } catch (IOException e) {
+            throw new PulsarReaderException(partitionTopic, e);
+        } finally {
+            job.merge(counts);
+        }
+    }
+
+    /**
+     * The same steps as live listener, except that schema is validated without validation cache, mismatches are kept
+     * as samples of the job and diagnostics are not reported to the log shared with listener.
+     */
+    private void scanMessage(ScanJob job, String partitionTopic, Message<byte[]> message, ScanCounts counts) {
+        var messageValue = message.getValue();
+        var contentType = contentSniffer.sniff(message, messageValue);
+        var oJsonObject = contentType == ContentType.JSON_OBJECT
+                ? facadeSchema.createJsonObject(partitionTopic, messageValue, messageCharset, DiagnosticReporter.IGNORE)
+                : Optional.<JSONObject>empty();
+        if (contentType == ContentType.JSON_OBJECT && oJsonObject.isEmpty()) {
+            contentType = ContentType.INVALID_JSON;
+        }
+        counts.messages++;
+        ScanCounts.increment(counts.contentTypes, contentType.tagValue);
+        if (oJsonObject.isEmpty()) {
+            counts.addBreakdowns(jsonPathBreakdowns.getUnknownValues());
+            return;
+        }
+        var validationResult = facadeSchema.validate(oJsonObject.get());
+        ScanCounts.increment(counts.schemas, validationResult.oSchemaRecord.map(schema -> schema.name).orElse(UNKNOWN));
+        if (validationResult.isRejected()) {
+            var closestSchema = validationResult.closestSchemaRecord == null ? null : validationResult.closestSchemaRecord.name;
+            counts.rejected++;
+            ScanCounts.increment(counts.rejectedByClosestSchema, closestSchema == null ? UNKNOWN : closestSchema);
+            if (counts.samples.size() < job.getMaxSamples()) {
+                var payloadLength = Math.min(messageValue.length, maxPayloadBytes);
+                counts.samples.add(new RejectedMessage(partitionTopic, String.valueOf(message.getMessageId()),
+                        message.getPublishTime(), System.currentTimeMillis(), closestSchema, facadeSchema.findErrors(validationResult),
+                        new String(Arrays.copyOf(messageValue, payloadLength), messageCharset), messageValue.length,
+                        payloadLength < messageValue.length));
+            }
+        }
+        counts.addBreakdowns(jsonPathBreakdowns.extract(partitionTopic, oJsonObject, messageValue, DiagnosticReporter.IGNORE));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,84 @@
+package net.osomahe.pulsarmonitor.scan.entity;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import net.osomahe.pulsarmonitor.schema.entity.RejectedMessage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+
+/**
+ * Aggregated result of scan job, counts of running job contain messages scanned so far.
+ */
+@RegisterForReflection
+public class ScanReport {
+
+    public final String id;
+
+    public final String topic;
+
+    public final String key;
+
+    public final Long fromEpochSecs;
+
+    public final Long toEpochSecs;
+
+    public final ScanStatus status;
+
+    public final long startedAt;
+
+    public final Long finishedAt;
+
+    public final int partitions;
+
+    public final long messages;
+
+    public final long rejected;
+
+    public final Map<String, Long> contentTypes;
+
+    public final Map<String, Long> schemas;
+
+    public final Map<String, Long> rejectedByClosestSchema;
+
+    public final Map<String, Map<String, Long>> breakdowns;
+
+    public final List<RejectedMessage> samples;
+
+    public final String errorMessage;
+
+    public ScanReport(String id, String topic, String key, Long fromEpochSecs, Long toEpochSecs, ScanStatus status,
+                      long startedAt, Long finishedAt, int partitions, long messages, long rejected,
+                      Map<String, Long> contentTypes, Map<String, Long> schemas, Map<String, Long> rejectedByClosestSchema,
+                      Map<String, Map<String, Long>> breakdowns, List<RejectedMessage> samples, String errorMessage) {
+        this.id = id;
+        this.topic = topic;
+        this.key = key;
+        this.fromEpochSecs = fromEpochSecs;
+        this.toEpochSecs = toEpochSecs;
+        this.status = status;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.partitions = partitions;
+        this.messages = messages;
+        this.rejected = rejected;
+        this.contentTypes = contentTypes;
+        this.schemas = schemas;
+        this.rejectedByClosestSchema = rejectedByClosestSchema;
+        this.breakdowns = breakdowns;
+        this.samples = samples;
+        this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", ScanReport.class.getSimpleName() + "[", "]")
+                .add("id='" + id + "'")
+                .add("topic='" + topic + "'")
+                .add("status=" + status)
+                .add("messages=" + messages)
+                .add("rejected=" + rejected)
+                .toString();
+    }
+}
@@ -0,0 +1,8 @@
+package net.osomahe.pulsarmonitor.scan.entity;
+
+public enum ScanStatus {
+    RUNNING,
+    FINISHED,
+    CANCELLED,
+    FAILED
+}
@@ -0,0 +1,36 @@
+package net.osomahe.pulsarmonitor.schema.boundary;
+
+import net.osomahe.pulsarmonitor.schema.control.RejectedMessages;
+
+import javax.annotation.security.PermitAll;
+import javax.inject.Inject;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+import java.util.Optional;
+
+@Path("/rejected-messages")
+public class RejectedMessagesResource {
+
+    @Inject
+    RejectedMessages rejectedMessages;
+
+    @GET
+    @PermitAll
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRejectedMessages(@QueryParam("topic") String topic,
+                                        @QueryParam("limit") @DefaultValue("100") int limit) {
+        if (!rejectedMessages.isEnabled()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(Map.of("errorMessage", "Rejected messages are not kept, set monitor.rejected-messages.enabled=true"))
+                    .build();
+        }
+        var oTopic = Optional.ofNullable(topic).filter(t -> !t.isBlank());
+        return Response.ok(rejectedMessages.findLatest(oTopic, Math.max(0, limit))).build();
+    }
+}
@@ -1,99 +1,343 @@
 package net.osomahe.pulsarmonitor.schema.boundary;
 
+import net.osomahe.pulsarmonitor.diagnostic.control.DiagnosticLog;
+import net.osomahe.pulsarmonitor.diagnostic.control.DiagnosticReporter;
+import net.osomahe.pulsarmonitor.info.control.StartupTimings;
+import net.osomahe.pulsarmonitor.schema.control.RejectedMessages;
+import net.osomahe.pulsarmonitor.schema.control.SchemaIndex;
+import net.osomahe.pulsarmonitor.schema.control.ValidationCache;
 import net.osomahe.pulsarmonitor.schema.entity.SchemaRecord;
+import net.osomahe.pulsarmonitor.schema.entity.ValidationResult;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Timer;
 import org.everit.json.schema.ValidationException;
 import org.everit.json.schema.loader.SchemaLoader;
 import org.jboss.logging.Logger;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Stream;
 
 
 @ApplicationScoped
 public class SchemaValidationFacade {
 
+    // reader of bytes allocates about 24 KB of decoder and tokener buffers, string of smaller payload allocates less
+    // (both allocate the same at 24 KB in JsonParseBenchmark)
+    private static final int STRING_PARSE_MAX_BYTES = 24 * 1024;
+
     @Inject
     Logger log;
 
     @ConfigProperty(name = "monitor.json-schema-dir")
     Optional<String> oSchemaDir;
 
-    List<SchemaRecord> schemaRecords;
+    @ConfigProperty(name = "monitor.schema-discriminator")
+    Optional<String> oSchemaDiscriminator;
+
+    @ConfigProperty(name = "monitor.validation-cache.enabled")
+    Boolean validationCacheEnabled;
+
+    @ConfigProperty(name = "monitor.validation-cache.max-entries")
+    Integer validationCacheMaxEntries;
+
+    @ConfigProperty(name = "monitor.validation-cache.shape")
+    Boolean validationCacheShape;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Inject
+    RejectedMessages rejectedMessages;
+
+    @Inject
+    StartupTimings startupTimings;
+
+    @Inject
+    DiagnosticLog diagnosticLog;
+
+    volatile SchemaIndex schemaIndex = SchemaIndex.empty();
+
+    private Map<Path, SchemaRecord> schemaFiles = Map.of();
+
+    private Counter compileFailures;
+
+    private Timer reloadTimer;
+
+    private ValidationCache validationCache;
+
+    private Counter cacheHits;
+
+    private Counter cacheMisses;
 
 
     @PostConstruct
     void init() throws IOException {
-        if (oSchemaDir.isEmpty() || "".equals(oSchemaDir.orElse(""))) {
+        compileFailures = metricRegistry.counter(Metadata.builder()
+                .withName("schemaCompileFailures")
+                .withDescription("Number of json schema files which could not be loaded")
+                .build());
+        reloadTimer = metricRegistry.timer(Metadata.builder()
+                .withName("schemaReloadDuration")
+                .withDescription("Time spent reloading changed json schema files")
+                .build());
+        if (Boolean.TRUE.equals(validationCacheEnabled)) {
+            initValidationCache();
+        }
+        if (getSchemaDir().isEmpty()) {
             log.errorf("NO schema directory defined!");
             return;
         }
-        schemaRecords = Files.walk(Path.of(oSchemaDir.get()))
-                .filter(Files::isRegularFile)
-                .map(Path::toFile)
-                .filter(file -> !file.isHidden())
-                .map(File::toPath)
-                .flatMap(this::initJsonSchema)
-                .toList();
+        var start = System.nanoTime();
+        var loaded = new LinkedHashMap<Path, SchemaRecord>();
+        loadSchemaFiles(getSchemaDir().get(), loaded);
+        publish(loaded);
+        startupTimings.record(StartupTimings.SCHEMA_COMPILATION, System.nanoTime() - start);
+    }
+
+    private void initValidationCache() {
+        validationCache = new ValidationCache(validationCacheMaxEntries);
+        cacheHits = metricRegistry.counter(Metadata.builder()
+                .withName("validationCacheHits")
+                .withDescription("Number of messages whose schema was found in validation cache")
+                .build());
+        cacheMisses = metricRegistry.counter(Metadata.builder()
+                .withName("validationCacheMisses")
+                .withDescription("Number of messages which had to be validated")
+                .build());
+        metricRegistry.gauge(Metadata.builder()
+                .withName("validationCacheEvictions")
+                .withDescription("Number of entries evicted from validation cache")
+                .build(), validationCache::evictions);
+        metricRegistry.gauge(Metadata.builder()
+                .withName("validationCacheSize")
+                .withDescription("Number of entries in validation cache")
+                .build(), validationCache::size);
+    }
 
+    public Optional<Path> getSchemaDir() {
+        return oSchemaDir.filter(dir -> !dir.isBlank()).map(Path::of);
     }
 
-    private Stream<SchemaRecord> initJsonSchema(Path path) {
+    /**
+     * Recompiles only changed schema files (or files in changed directories) and publishes new schema set with single
+     * swap, validation keeps using the previous set until then. File which cannot be compiled keeps its previous version.
+     */
+    public synchronized void reloadSchemas(Collection<Path> changedPaths) {
+        var start = System.nanoTime();
+        var files = new LinkedHashMap<>(schemaFiles);
+        for (var path : changedPaths) {
+            files.keySet().removeIf(schemaPath -> schemaPath.startsWith(path) && !Files.exists(schemaPath));
+            try {
+                loadSchemaFiles(path, files);
+            } catch (IOException e) {
+                log.errorf(e, "Cannot reload json schemas from path: %s", path.toAbsolutePath());
+            }
+        }
+        publish(files);
+        reloadTimer.update(Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private void loadSchemaFiles(Path path, Map<Path, SchemaRecord> files) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        List<Path> schemaPaths;
+        try (var paths = Files.walk(path)) {
+            schemaPaths = paths.filter(Files::isRegularFile)
+                    .filter(schemaPath -> !schemaPath.toFile().isHidden())
+                    .toList();
+        }
+        // schemas are compiled independently in common fork-join pool, order of files is kept
+        var schemaRecords = schemaPaths.parallelStream().map(this::initJsonSchema).toList();
+        for (int i = 0; i < schemaPaths.size(); i++) {
+            var schemaPath = schemaPaths.get(i);
+            schemaRecords.get(i).ifPresent(schemaRecord -> files.put(schemaPath, schemaRecord));
+        }
+    }
+
+    private synchronized void publish(Map<Path, SchemaRecord> files) {
+        schemaFiles = files;
+        schemaIndex = SchemaIndex.of(List.copyOf(files.values()), oSchemaDiscriminator);
+        if (validationCache != null) {
+            validationCache.clear();
+        }
+        log.infof("Loaded json schemas %s", schemaIndex);
+    }
+
+    private Optional<SchemaRecord> initJsonSchema(Path path) {
         try {
             var jsonSchemaString = Files.readString(path);
-            return Stream.of(new SchemaRecord(SchemaLoader.load(new JSONObject(jsonSchemaString))));
+            return Optional.of(new SchemaRecord(SchemaLoader.load(new JSONObject(jsonSchemaString))));
         } catch (Exception e) {
+            compileFailures.inc();
             log.errorf(e, "Cannot load JsonSchema from path: %s with error %s", path.toAbsolutePath(), e.getMessage());
         }
-        return Stream.empty();
+        return Optional.empty();
     }
 
 
-    public Optional<JSONObject> createJsonObject(String input) {
-        log.debugf("Creating JSON from input %s", oneLiner(input));
+    /**
+     * Parses json of message, small payloads from string and large payloads directly from bytes. Listener calls it only
+     * for payloads sniffed as json object, parse error is reported to {@link DiagnosticLog}.
+     */
+    public Optional<JSONObject> createJsonObject(String topic, byte[] input, Charset charset) {
+        return createJsonObject(topic, input, charset, diagnosticLog);
+    }
+
+    /**
+     * Parses json of message and reports parse error to given reporter.
+     */
+    public Optional<JSONObject> createJsonObject(String topic, byte[] input, Charset charset, DiagnosticReporter reporter) {
+        if (log.isDebugEnabled()) {
+            log.debugf("Creating JSON from input %s", oneLiner(new String(input, charset)));
+        }
         try {
-            return Optional.ofNullable(new JSONObject(input));
+            return Optional.ofNullable(input.length <= STRING_PARSE_MAX_BYTES ? parseString(input, charset) : parseReader(input, charset));
         } catch (Exception e) {
-            log.warnf(e, "Input is not a json! Input: %s", oneLiner(input));
+            reporter.report(topic, "Input is not a json", e.getMessage(), input);
         }
         return Optional.empty();
     }
 
+    static JSONObject parseString(byte[] input, Charset charset) {
+        return new JSONObject(new String(input, charset));
+    }
+
+    static JSONObject parseReader(byte[] input, Charset charset) {
+        return new JSONObject(new JSONTokener(new InputStreamReader(new ByteArrayInputStream(input), charset)));
+    }
+
     public Optional<SchemaRecord> findSchemaRecord(JSONObject jsonObject) {
-        log.debugf("Finding schema for json %s", oneLiner(jsonObject.toString()));
-        if (schemaRecords == null || schemaRecords.isEmpty()) {
+        return validate(jsonObject).oSchemaRecord;
+    }
+
+    /**
+     * Finds schema using validation cache when it is enabled. Cache is looked up by hash of payload bytes and optionally
+     * by hash of json shape, which is approximation because it ignores values other than discriminator.
+     */
+    public ValidationResult validate(byte[] payload, JSONObject jsonObject) {
+        if (validationCache == null) {
+            return validate(jsonObject);
+        }
+        var payloadHash = ValidationCache.hashBytes(payload);
+        var oCached = validationCache.get(payloadHash);
+        var shapeHash = 0L;
+        var shapeCached = false;
+        if (oCached.isEmpty() && Boolean.TRUE.equals(validationCacheShape)) {
+            shapeHash = ValidationCache.hashShape(jsonObject, oSchemaDiscriminator.orElse(null));
+            oCached = validationCache.get(shapeHash);
+            shapeCached = oCached.isPresent();
+        }
+        if (oCached.isPresent()) {
+            cacheHits.inc();
+            if (oCached.get() instanceof SchemaRecord schemaRecord) {
+                return ValidationResult.valid(schemaRecord, true);
+            }
+            return ValidationResult.cachedMismatch(((ValidationCache.Mismatch) oCached.get()).closestSchemaRecord, shapeCached);
+        }
+        cacheMisses.inc();
+        // generation is read before schema index, result of schemas replaced meanwhile is not cached
+        var generation = validationCache.generation();
+        var validationResult = validate(jsonObject);
+        if (validationResult.validated) {
+            validationCache.put(payloadHash, generation, validationResult.oSchemaRecord, validationResult.closestSchemaRecord);
+            if (Boolean.TRUE.equals(validationCacheShape)) {
+                validationCache.put(shapeHash, generation, validationResult.oSchemaRecord, validationResult.closestSchemaRecord);
+            }
+        }
+        return validationResult;
+    }
+
+    /**
+     * Validates json against candidate schemas without validation cache, when none matches the candidate with the
+     * fewest violations is kept as the closest one.
+     */
+    public ValidationResult validate(JSONObject jsonObject) {
+        if (log.isDebugEnabled()) {
+            log.debugf("Finding schema for json %s", oneLiner(jsonObject.toString()));
+        }
+        var index = schemaIndex;
+        if (index.isEmpty()) {
             log.debugf("NO schema was loaded for comparison!");
-            return Optional.empty();
+            return ValidationResult.NOT_VALIDATED;
         }
-        for (var schemaRecord : schemaRecords) {
+        SchemaRecord closestSchemaRecord = null;
+        ValidationException closestViolation = null;
+        for (var schemaRecord : index.findCandidates(jsonObject)) {
             try {
                 schemaRecord.schema.validate(jsonObject);
                 log.debugf("Json is VALID for schema \"%s\"[%s]", schemaRecord.schema.getTitle(), schemaRecord.schema.getId());
-                return Optional.ofNullable(schemaRecord);
+                return ValidationResult.valid(schemaRecord, false);
             } catch (ValidationException e) {
                 log.debugf("Json is NOT VALID for schema \"%s\"[%s]", schemaRecord.schema.getTitle(), schemaRecord.schema.getId());
                 if (log.isDebugEnabled()) {
                     e.getCausingExceptions().forEach(log::debug);
                 }
+                if (closestViolation == null || e.getViolationCount() < closestViolation.getViolationCount()) {
+                    closestSchemaRecord = schemaRecord;
+                    closestViolation = e;
+                }
             }
         }
-        log.warnf("No schema was found for json: %s", jsonObject);
-        return Optional.empty();
+        return ValidationResult.mismatch(closestSchemaRecord, closestViolation);
+    }
+
+    /**
+     * Reports rejected message to {@link DiagnosticLog} and keeps it with validation errors of the closest schema for
+     * {@link RejectedMessagesResource}.
+     */
+    public void reject(String topic, String messageId, long publishTime, byte[] payload, ValidationResult validationResult) {
+        if (!validationResult.isRejected()) {
+            return;
+        }
+        var closestSchema = validationResult.closestSchemaRecord == null ? null : validationResult.closestSchemaRecord.name;
+        diagnosticLog.report(topic, "No schema was found for json", "closest schema " + closestSchema, payload);
+        if (rejectedMessages.isEnabled()) {
+            rejectedMessages.record(topic, messageId, publishTime, payload, closestSchema, findErrors(validationResult));
+        }
+    }
+
+    /**
+     * Validation errors of the closest schema, or explanation why there are none.
+     */
+    public List<String> findErrors(ValidationResult validationResult) {
+        if (validationResult.closestViolation != null) {
+            return validationResult.closestViolation.getAllMessages();
+        }
+        if (validationResult.closestSchemaRecord == null) {
+            return List.of("No schema is candidate for value of discriminator property %s".formatted(oSchemaDiscriminator.orElse("")));
+        }
+        if (validationResult.shapeCached) {
+            return List.of("Message of the same json shape was rejected before, result was taken from validation cache without errors");
+        }
+        if (validationResult.cached) {
+            return List.of("Identical message was rejected before, result was taken from validation cache without errors");
+        }
+        return List.of();
     }
 
     private String oneLiner(String multiLine) {
         if (multiLine == null) {
             return null;
         }
-        return multiLine.replaceAll("\n", " ");
+        return multiLine.replace('\n', ' ');
     }
 }
@@ -0,0 +1,181 @@
+package net.osomahe.pulsarmonitor.schema.control;
+
+import net.osomahe.pulsarmonitor.schema.entity.RejectedMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Last rejected messages of single topic in one preallocated buffer split into fixed size slots. New message
+ * overwrites the oldest slot so memory does not grow, payload and errors longer than slot are truncated. Strings are
+ * encoded directly into the slot and truncated on character boundary, payload is truncated on character boundary of
+ * its charset.
+ * <p>
+ * Slot layout: rejectedAt (8), publishTime (8), messageId length (2) and bytes, closest schema length (2) and bytes,
+ * payload size (4), stored payload length (4) and bytes, errors length (4) and errors, every error as its length (2)
+ * and bytes.
+ */
+class RejectedMessageRing {
+
+    private static final int MAX_MESSAGE_ID_BYTES = 64;
+
+    private static final int MAX_SCHEMA_BYTES = 128;
+
+    private final String topic;
+
+    private final int capacity;
+
+    private final int maxPayloadBytes;
+
+    private final int maxErrorBytes;
+
+    private final int slotSize;
+
+    private final Charset payloadCharset;
+
+    private final ByteBuffer buffer;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final CharsetDecoder payloadDecoder;
+
+    private long written;
+
+    RejectedMessageRing(String topic, int capacity, int maxPayloadBytes, int maxErrorBytes, boolean offHeap, Charset payloadCharset) {
+        this.topic = topic;
+        this.capacity = capacity;
+        this.maxPayloadBytes = maxPayloadBytes;
+        this.maxErrorBytes = maxErrorBytes;
+        this.payloadCharset = payloadCharset;
+        this.payloadDecoder = payloadCharset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        var size = bufferSize(capacity, maxPayloadBytes, maxErrorBytes);
+        if (capacity < 1 || maxPayloadBytes < 0 || maxErrorBytes < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Buffer of %d rejected messages with %d payload bytes and %d error bytes cannot be allocated"
+                    .formatted(capacity, maxPayloadBytes, maxErrorBytes));
+        }
+        this.slotSize = (int) (size / capacity);
+        this.buffer = offHeap ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+    }
+
+    /**
+     * Size of buffer of one topic in bytes, can be larger than the maximal buffer size.
+     */
+    static long bufferSize(int capacity, int maxPayloadBytes, int maxErrorBytes) {
+        var slotSize = 8L + 8 + 2 + MAX_MESSAGE_ID_BYTES + 2 + MAX_SCHEMA_BYTES + 4 + 4 + maxPayloadBytes + 4 + maxErrorBytes;
+        return capacity * slotSize;
+    }
+
+    synchronized void record(long rejectedAt, String messageId, long publishTime, byte[] payload, String closestSchema, List<String> errors) {
+        var position = (int) (written++ % capacity) * slotSize;
+        buffer.putLong(position, rejectedAt);
+        buffer.putLong(position + 8, publishTime);
+        position = putShortString(position + 16, messageId, MAX_MESSAGE_ID_BYTES);
+        position = putShortString(position, closestSchema, MAX_SCHEMA_BYTES);
+        var payloadLength = payload.length <= maxPayloadBytes ? payload.length : truncatedLength(payload);
+        buffer.putInt(position, payload.length);
+        buffer.putInt(position + 4, payloadLength);
+        buffer.put(position + 8, payload, 0, payloadLength);
+        position += 8 + maxPayloadBytes;
+        buffer.putInt(position, putErrors(position + 4, errors));
+    }
+
+    /**
+     * Length of payload prefix which fits into max payload bytes and ends on character boundary, decoder consumes
+     * only complete characters when more input is expected.
+     */
+    private int truncatedLength(byte[] payload) {
+        var input = ByteBuffer.wrap(payload, 0, maxPayloadBytes);
+        payloadDecoder.reset().decode(input, CharBuffer.allocate(maxPayloadBytes), false);
+        return input.position();
+    }
+
+    /**
+     * Writes errors with their lengths, error which does not fit is truncated and the following ones are left out.
+     */
+    private int putErrors(int position, List<String> errors) {
+        var length = 0;
+        for (var error : errors) {
+            var maxBytes = Math.min(maxErrorBytes - length - 2, Short.MAX_VALUE);
+            if (maxBytes < 0) {
+                break;
+            }
+            var bytes = encode(position + length + 2, error, maxBytes);
+            buffer.putShort(position + length, (short) bytes);
+            length += 2 + bytes;
+        }
+        return length;
+    }
+
+    private int putShortString(int position, String value, int maxBytes) {
+        buffer.putShort(position, (short) encode(position + 2, value, maxBytes));
+        return position + 2 + maxBytes;
+    }
+
+    /**
+     * Encodes value at position and returns number of written bytes, encoder stops before character which does not
+     * fit into max bytes.
+     */
+    private int encode(int position, String value, int maxBytes) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        var target = buffer.slice(position, maxBytes);
+        encoder.reset().encode(CharBuffer.wrap(value), target, true);
+        return target.position();
+    }
+
+    /**
+     * Returns at most limit messages, the newest first.
+     */
+    synchronized List<RejectedMessage> findLatest(int limit) {
+        var count = (int) Math.min(Math.min(written, capacity), limit);
+        var messages = new ArrayList<RejectedMessage>(count);
+        for (long sequence = written - 1; sequence >= written - count; sequence--) {
+            messages.add(read((int) (sequence % capacity) * slotSize));
+        }
+        return messages;
+    }
+
+    private RejectedMessage read(int position) {
+        var rejectedAt = buffer.getLong(position);
+        var publishTime = buffer.getLong(position + 8);
+        var messageId = getShortString(position + 16);
+        position += 16 + 2 + MAX_MESSAGE_ID_BYTES;
+        var closestSchema = getShortString(position);
+        position += 2 + MAX_SCHEMA_BYTES;
+        var payloadSize = buffer.getInt(position);
+        var payload = new byte[buffer.getInt(position + 4)];
+        buffer.get(position + 8, payload);
+        position += 8 + maxPayloadBytes;
+        var errors = getErrors(position + 4, buffer.getInt(position));
+        return new RejectedMessage(topic, messageId.isEmpty() ? null : messageId, publishTime, rejectedAt,
+                closestSchema.isEmpty() ? null : closestSchema, errors,
+                new String(payload, payloadCharset), payloadSize, payload.length < payloadSize);
+    }
+
+    private List<String> getErrors(int position, int length) {
+        var errors = new ArrayList<String>();
+        for (int end = position + length; position < end; position += 2 + buffer.getShort(position)) {
+            errors.add(getShortString(position));
+        }
+        return errors;
+    }
+
+    private String getShortString(int position) {
+        var bytes = new byte[buffer.getShort(position)];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,94 @@
+package net.osomahe.pulsarmonitor.schema.control;
+
+import net.osomahe.pulsarmonitor.schema.entity.RejectedMessage;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.nio.charset.Charset;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Keeps last rejected messages of every topic in {@link RejectedMessageRing} so failures can be inspected without debug
+ * logging. Rings are allocated when topic rejects its first message, up to configured number of topics.
+ */
+@ApplicationScoped
+public class RejectedMessages {
+
+    @Inject
+    Logger log;
+
+    @ConfigProperty(name = "monitor.rejected-messages.enabled")
+    Boolean enabled;
+
+    @ConfigProperty(name = "monitor.rejected-messages.capacity")
+    Integer capacity;
+
+    @ConfigProperty(name = "monitor.rejected-messages.max-payload-bytes")
+    Integer maxPayloadBytes;
+
+    @ConfigProperty(name = "monitor.rejected-messages.max-error-bytes")
+    Integer maxErrorBytes;
+
+    @ConfigProperty(name = "monitor.rejected-messages.max-topics")
+    Integer maxTopics;
+
+    @ConfigProperty(name = "monitor.rejected-messages.off-heap")
+    Boolean offHeap;
+
+    @ConfigProperty(name = "monitor.message-encoding")
+    String messageEncoding;
+
+    private final Map<String, RejectedMessageRing> rings = new ConcurrentHashMap<>();
+
+    private Charset messageCharset;
+
+    @PostConstruct
+    void init() {
+        messageCharset = Charset.forName(messageEncoding);
+        // ring of every topic is one buffer, its size is checked before the first message is rejected
+        var bufferSize = RejectedMessageRing.bufferSize(capacity, maxPayloadBytes, maxErrorBytes);
+        if (isEnabled() && (capacity < 1 || maxPayloadBytes < 0 || maxErrorBytes < 0 || bufferSize > Integer.MAX_VALUE)) {
+            throw new IllegalStateException("Rejected messages need positive capacity and at most %d bytes per topic, configured %d bytes"
+                    .formatted(Integer.MAX_VALUE, bufferSize));
+        }
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    public void record(String topic, String messageId, long publishTime, byte[] payload, String closestSchema, List<String> errors) {
+        var ring = rings.get(topic);
+        if (ring == null) {
+            if (rings.size() >= maxTopics) {
+                log.debugf("Rejected message of topic %s is not kept, limit of %d topics reached", topic, maxTopics);
+                return;
+            }
+            ring = rings.computeIfAbsent(topic, t -> new RejectedMessageRing(t, capacity, maxPayloadBytes, maxErrorBytes, Boolean.TRUE.equals(offHeap), messageCharset));
+        }
+        ring.record(System.currentTimeMillis(), messageId, publishTime, payload, closestSchema, errors);
+    }
+
+    /**
+     * Returns at most limit messages of given topic or of all topics, the most recently rejected first.
+     */
+    public List<RejectedMessage> findLatest(Optional<String> oTopic, int limit) {
+        if (oTopic.isPresent()) {
+            var ring = rings.get(oTopic.get());
+            return ring == null ? List.of() : ring.findLatest(limit);
+        }
+        return rings.values().stream()
+                .flatMap(ring -> ring.findLatest(limit).stream())
+                .sorted(Comparator.comparingLong((RejectedMessage rejectedMessage) -> rejectedMessage.rejectedAt).reversed())
+                .limit(limit)
+                .toList();
+    }
+}
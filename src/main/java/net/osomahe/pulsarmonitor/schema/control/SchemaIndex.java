@@ -0,0 +1,168 @@
+package net.osomahe.pulsarmonitor.schema.control;
+
+import net.osomahe.pulsarmonitor.schema.entity.SchemaRecord;
+import org.everit.json.schema.CombinedSchema;
+import org.everit.json.schema.EnumSchema;
+import org.everit.json.schema.ObjectSchema;
+import org.everit.json.schema.ReferenceSchema;
+import org.everit.json.schema.Schema;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+
+/**
+ * Immutable lookup of candidate schemas by value of discriminator property (e.g. "type").
+ * <p>
+ * Schema is indexed when its discriminator property is restricted by string {@code enum} values.
+ * Schemas without such restriction are candidates for every message. Candidate lists keep original order of schemas
+ * so the first matching schema is the same as with full scan.
+ */
+public class SchemaIndex {
+
+    private static final int MAX_REFERENCE_DEPTH = 16;
+
+    public final List<SchemaRecord> schemaRecords;
+
+    private final String discriminator;
+
+    private final Map<String, List<SchemaRecord>> candidatesByValue;
+
+    private final List<SchemaRecord> unrestricted;
+
+    private SchemaIndex(List<SchemaRecord> schemaRecords, String discriminator) {
+        this.schemaRecords = schemaRecords;
+        this.discriminator = discriminator;
+        var restrictions = new IdentityHashMap<SchemaRecord, Set<String>>();
+        var values = new HashSet<String>();
+        if (discriminator != null) {
+            for (var schemaRecord : schemaRecords) {
+                findPermittedValues(schemaRecord.schema, 0).ifPresent(permitted -> {
+                    restrictions.put(schemaRecord, permitted);
+                    values.addAll(permitted);
+                });
+            }
+        }
+        this.unrestricted = schemaRecords.stream().filter(sr -> !restrictions.containsKey(sr)).toList();
+        var candidates = new HashMap<String, List<SchemaRecord>>();
+        for (var value : values) {
+            candidates.put(value, schemaRecords.stream()
+                    .filter(sr -> !restrictions.containsKey(sr) || restrictions.get(sr).contains(value))
+                    .toList());
+        }
+        this.candidatesByValue = Map.copyOf(candidates);
+    }
+
+    public static SchemaIndex of(List<SchemaRecord> schemaRecords, Optional<String> oDiscriminator) {
+        return new SchemaIndex(schemaRecords, oDiscriminator.filter(d -> !d.isBlank()).orElse(null));
+    }
+
+    public static SchemaIndex empty() {
+        return new SchemaIndex(List.of(), null);
+    }
+
+    public boolean isEmpty() {
+        return schemaRecords.isEmpty();
+    }
+
+    public int indexedCount() {
+        return schemaRecords.size() - unrestricted.size();
+    }
+
+    /**
+     * Returns schemas which can possibly validate given json. Falls back to all schemas when json does not contain
+     * string discriminator value.
+     */
+    public List<SchemaRecord> findCandidates(JSONObject jsonObject) {
+        if (discriminator == null || candidatesByValue.isEmpty()) {
+            return schemaRecords;
+        }
+        if (!(jsonObject.opt(discriminator) instanceof String value)) {
+            return schemaRecords;
+        }
+        return candidatesByValue.getOrDefault(value, unrestricted);
+    }
+
+    private Optional<Set<String>> findPermittedValues(Schema schema, int depth) {
+        if (depth > MAX_REFERENCE_DEPTH) {
+            return Optional.empty();
+        }
+        if (schema instanceof ObjectSchema objectSchema) {
+            var propertySchema = objectSchema.getPropertySchemas().get(discriminator);
+            return propertySchema == null ? Optional.empty() : findEnumValues(propertySchema, depth + 1);
+        }
+        if (schema instanceof ReferenceSchema referenceSchema) {
+            return referenceSchema.getReferredSchema() == null
+                    ? Optional.empty()
+                    : findPermittedValues(referenceSchema.getReferredSchema(), depth + 1);
+        }
+        if (schema instanceof CombinedSchema combinedSchema) {
+            return combine(combinedSchema, subschema -> findPermittedValues(subschema, depth + 1));
+        }
+        return Optional.empty();
+    }
+
+    private Optional<Set<String>> findEnumValues(Schema schema, int depth) {
+        if (depth > MAX_REFERENCE_DEPTH) {
+            return Optional.empty();
+        }
+        if (schema instanceof EnumSchema enumSchema) {
+            var permitted = new HashSet<String>();
+            for (var value : enumSchema.getPossibleValues()) {
+                if (!(value instanceof String stringValue)) {
+                    return Optional.empty();
+                }
+                permitted.add(stringValue);
+            }
+            return Optional.of(Set.copyOf(permitted));
+        }
+        if (schema instanceof ReferenceSchema referenceSchema) {
+            return referenceSchema.getReferredSchema() == null
+                    ? Optional.empty()
+                    : findEnumValues(referenceSchema.getReferredSchema(), depth + 1);
+        }
+        if (schema instanceof CombinedSchema combinedSchema) {
+            return combine(combinedSchema, subschema -> findEnumValues(subschema, depth + 1));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * allOf is restricted by any restricted subschema, anyOf/oneOf only when all subschemas are restricted.
+     */
+    private Optional<Set<String>> combine(CombinedSchema combinedSchema, Function<Schema, Optional<Set<String>>> finder) {
+        if (combinedSchema.getCriterion() == CombinedSchema.ALL_CRITERION) {
+            return combinedSchema.getSubschemas().stream()
+                    .map(finder)
+                    .flatMap(Optional::stream)
+                    .findFirst();
+        }
+        var union = new HashSet<String>();
+        for (var subschema : combinedSchema.getSubschemas()) {
+            var oPermitted = finder.apply(subschema);
+            if (oPermitted.isEmpty()) {
+                return Optional.empty();
+            }
+            union.addAll(oPermitted.get());
+        }
+        return union.isEmpty() ? Optional.empty() : Optional.of(Set.copyOf(union));
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", SchemaIndex.class.getSimpleName() + "[", "]")
+                .add("discriminator='" + discriminator + "'")
+                .add("schemas=" + schemaRecords.size())
+                .add("indexed=" + indexedCount())
+                .add("values=" + candidatesByValue.size())
+                .toString();
+    }
+}
@@ -0,0 +1,134 @@
+package net.osomahe.pulsarmonitor.schema.control;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import net.osomahe.pulsarmonitor.schema.boundary.SchemaValidationFacade;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Watches json schema directory in background and lets {@link SchemaValidationFacade} recompile changed files.
+ * Events are collected until directory is quiet for configured time so editors writing file in several steps cause
+ * single reload.
+ */
+@ApplicationScoped
+public class SchemaReloader {
+
+    @Inject
+    Logger log;
+
+    @Inject
+    SchemaValidationFacade facadeSchema;
+
+    @ConfigProperty(name = "monitor.json-schema-reload.enabled")
+    Boolean enabled;
+
+    @ConfigProperty(name = "monitor.json-schema-reload.quiet-period-ms")
+    Long quietPeriodMs;
+
+    private WatchService watchService;
+
+    private Thread watchThread;
+
+    void startup(@Observes StartupEvent event) {
+        var oSchemaDir = facadeSchema.getSchemaDir();
+        if (!Boolean.TRUE.equals(enabled) || oSchemaDir.isEmpty()) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerRecursively(oSchemaDir.get());
+        } catch (IOException e) {
+            log.errorf(e, "Cannot watch json schema directory: %s", oSchemaDir.get());
+            return;
+        }
+        watchThread = new Thread(this::watch, "json-schema-reloader");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        log.infof("Watching json schema directory: %s", oSchemaDir.get());
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                var changedPaths = new HashSet<Path>();
+                collectChanges(watchService.take(), changedPaths);
+                WatchKey key;
+                while ((key = watchService.poll(quietPeriodMs, TimeUnit.MILLISECONDS)) != null) {
+                    collectChanges(key, changedPaths);
+                }
+                log.debugf("Reloading json schemas for changed paths: %s", changedPaths);
+                facadeSchema.reloadSchemas(changedPaths);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Json schema watch service closed");
+        }
+    }
+
+    private void collectChanges(WatchKey key, Set<Path> changedPaths) {
+        var dir = (Path) key.watchable();
+        for (var event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changedPaths.add(dir);
+                continue;
+            }
+            var path = dir.resolve((Path) event.context());
+            if (path.getFileName().toString().startsWith(".")) {
+                // e.g. kubernetes config map swaps hidden ..data symlink, visible files keep their paths
+                changedPaths.add(dir);
+                continue;
+            }
+            changedPaths.add(path);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    registerRecursively(path);
+                } catch (IOException e) {
+                    log.errorf(e, "Cannot watch json schema directory: %s", path);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private void registerRecursively(Path root) throws IOException {
+        try (var dirs = Files.walk(root)) {
+            for (var dir : dirs.filter(Files::isDirectory).toList()) {
+                dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    void shutdown(@Observes ShutdownEvent event) {
+        if (watchThread != null) {
+            watchThread.interrupt();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Cannot close json schema watch service", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package net.osomahe.pulsarmonitor.schema.control;
+
+import net.osomahe.pulsarmonitor.schema.entity.SchemaRecord;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Bounded LRU cache of schema matching results keyed by 64-bit hash of payload bytes or of json structure.
+ * <p>
+ * Cache is split into segments with their own lock and eviction so concurrent listeners do not contend on single lock.
+ * Cached value is either matched {@link SchemaRecord} or {@link Mismatch} with the closest schema.
+ * <p>
+ * Every entry is stamped with generation of schemas it was validated against. {@link #clear()} starts new generation,
+ * so result of validation which was still running with previous schemas is not stored and cannot be returned.
+ */
+public class ValidationCache {
+
+    public static final Mismatch NO_MATCH = new Mismatch(null);
+
+    private static final int SEGMENTS = 16;
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder evictions = new LongAdder();
+
+    private volatile int generation;
+
+    public ValidationCache(int maxEntries) {
+        var segmentSize = Math.max(1, maxEntries / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * Returns cached result of the current generation, empty optional when hash is not cached.
+     */
+    public Optional<Object> get(long hash) {
+        return Optional.ofNullable(segment(hash).find(hash));
+    }
+
+    /**
+     * Generation which has to be read before schemas used for validation, its result is then stored with it.
+     */
+    public int generation() {
+        return generation;
+    }
+
+    /**
+     * Stores result of validation started in given generation, result of older generation is dropped.
+     */
+    public void put(long hash, int generation, Optional<SchemaRecord> oSchemaRecord, SchemaRecord closestSchemaRecord) {
+        Object value;
+        if (oSchemaRecord.isPresent()) {
+            value = oSchemaRecord.get();
+        } else {
+            value = closestSchemaRecord == null ? NO_MATCH : new Mismatch(closestSchemaRecord);
+        }
+        segment(hash).store(hash, new StampedResult(generation, value));
+    }
+
+    /**
+     * Starts new generation, called after new schemas are published.
+     */
+    public synchronized void clear() {
+        generation++;
+        for (var segment : segments) {
+            segment.reset();
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (var segment : segments) {
+            size += segment.count();
+        }
+        return size;
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private Segment segment(long hash) {
+        return segments[(int) ((hash * PRIME_1) >>> 60)];
+    }
+
+    /**
+     * Fast non-cryptographic hash of bytes, reads 8 bytes per step. Length is mixed in so prefixes differ.
+     */
+    public static long hashBytes(byte[] bytes) {
+        long hash = PRIME_3 ^ (bytes.length * PRIME_1);
+        int i = 0;
+        for (; i + 8 <= bytes.length; i += 8) {
+            hash = mix(hash, (long) LONG_VIEW.get(bytes, i));
+        }
+        long tail = 0;
+        for (int shift = 0; i < bytes.length; i++, shift += 8) {
+            tail |= (bytes[i] & 0xFFL) << shift;
+        }
+        return finish(mix(hash, tail));
+    }
+
+    /**
+     * Hash of json structure, property names and value types. Value of discriminator property is included as well
+     * because it selects the schema.
+     */
+    public static long hashShape(JSONObject jsonObject, String discriminator) {
+        var hash = hashObjectShape(jsonObject, PRIME_3);
+        if (discriminator != null && jsonObject.opt(discriminator) instanceof String value) {
+            hash = mix(hash, value.hashCode());
+        }
+        return finish(hash);
+    }
+
+    private static long hashObjectShape(JSONObject jsonObject, long seed) {
+        // xor of entries makes hash independent of property order
+        long entries = 0;
+        for (var key : jsonObject.keySet()) {
+            entries ^= finish(mix(mix(PRIME_1, key.hashCode()), hashValueShape(jsonObject.opt(key))));
+        }
+        return mix(mix(seed, 'o'), entries);
+    }
+
+    private static long hashValueShape(Object value) {
+        if (value instanceof JSONObject jsonObject) {
+            return hashObjectShape(jsonObject, PRIME_2);
+        }
+        if (value instanceof JSONArray jsonArray) {
+            long hash = mix(PRIME_2, 'a');
+            for (var item : jsonArray) {
+                hash = mix(hash, hashValueShape(item));
+            }
+            return hash;
+        }
+        if (value instanceof String) {
+            return 's';
+        }
+        if (value instanceof Boolean) {
+            return 'b';
+        }
+        if (value instanceof Number) {
+            return 'n';
+        }
+        return 'z';
+    }
+
+    private static long mix(long hash, long value) {
+        hash ^= Long.rotateLeft(value * PRIME_2, 31) * PRIME_1;
+        return Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_3;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        return hash ^ (hash >>> 32);
+    }
+
+    /**
+     * Cached rejection keeps the closest schema, its validation errors are not kept.
+     */
+    public static final class Mismatch {
+
+        public final SchemaRecord closestSchemaRecord;
+
+        private Mismatch(SchemaRecord closestSchemaRecord) {
+            this.closestSchemaRecord = closestSchemaRecord;
+        }
+    }
+
+    private static final class StampedResult {
+
+        private final int generation;
+
+        private final Object value;
+
+        private StampedResult(int generation, Object value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<Long, StampedResult> {
+
+        private final int maxEntries;
+
+        private Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        private synchronized Object find(long hash) {
+            var entry = super.get(hash);
+            return entry == null || entry.generation != generation ? null : entry.value;
+        }
+
+        // generation is checked under the same lock as reset, so entry of old generation cannot be stored after it
+        private synchronized void store(long hash, StampedResult entry) {
+            if (entry.generation == generation) {
+                super.put(hash, entry);
+            }
+        }
+
+        private synchronized void reset() {
+            super.clear();
+        }
+
+        private synchronized int count() {
+            return super.size();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, StampedResult> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package net.osomahe.pulsarmonitor.schema.entity;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.util.List;
+import java.util.StringJoiner;
+
+
+@RegisterForReflection
+public class RejectedMessage {
+
+    public final String topic;
+
+    public final String messageId;
+
+    public final long publishTime;
+
+    public final long rejectedAt;
+
+    public final String closestSchema;
+
+    public final List<String> errors;
+
+    public final String payload;
+
+    public final int payloadSize;
+
+    public final boolean truncated;
+
+    public RejectedMessage(String topic, String messageId, long publishTime, long rejectedAt, String closestSchema,
+                           List<String> errors, String payload, int payloadSize, boolean truncated) {
+        this.topic = topic;
+        this.messageId = messageId;
+        this.publishTime = publishTime;
+        this.rejectedAt = rejectedAt;
+        this.closestSchema = closestSchema;
+        this.errors = errors;
+        this.payload = payload;
+        this.payloadSize = payloadSize;
+        this.truncated = truncated;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", RejectedMessage.class.getSimpleName() + "[", "]")
+                .add("topic='" + topic + "'")
+                .add("messageId='" + messageId + "'")
+                .add("closestSchema='" + closestSchema + "'")
+                .add("errors=" + errors)
+                .toString();
+    }
+}
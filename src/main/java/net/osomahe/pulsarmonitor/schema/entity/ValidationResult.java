@@ -0,0 +1,60 @@
+package net.osomahe.pulsarmonitor.schema.entity;
+
+import org.everit.json.schema.ValidationException;
+
+import java.util.Optional;
+
+
+/**
+ * Result of finding schema for json message. When no schema matched it carries the closest schema, the candidate
+ * with the fewest violations, and its validation error.
+ */
+public class ValidationResult {
+
+    public static final ValidationResult NOT_VALIDATED = new ValidationResult(Optional.empty(), false, null, null, false, false);
+
+    public final Optional<SchemaRecord> oSchemaRecord;
+
+    public final boolean validated;
+
+    public final SchemaRecord closestSchemaRecord;
+
+    public final ValidationException closestViolation;
+
+    public final boolean cached;
+
+    // result was cached for message of the same json shape, not for identical message
+    public final boolean shapeCached;
+
+    private ValidationResult(Optional<SchemaRecord> oSchemaRecord, boolean validated, SchemaRecord closestSchemaRecord,
+                             ValidationException closestViolation, boolean cached, boolean shapeCached) {
+        this.oSchemaRecord = oSchemaRecord;
+        this.validated = validated;
+        this.closestSchemaRecord = closestSchemaRecord;
+        this.closestViolation = closestViolation;
+        this.cached = cached;
+        this.shapeCached = shapeCached;
+    }
+
+    public static ValidationResult valid(SchemaRecord schemaRecord, boolean cached) {
+        return new ValidationResult(Optional.of(schemaRecord), true, null, null, cached, false);
+    }
+
+    public static ValidationResult mismatch(SchemaRecord closestSchemaRecord, ValidationException closestViolation) {
+        return new ValidationResult(Optional.empty(), true, closestSchemaRecord, closestViolation, false, false);
+    }
+
+    /**
+     * Rejection taken from validation cache, it has the closest schema but not its validation error.
+     */
+    public static ValidationResult cachedMismatch(SchemaRecord closestSchemaRecord, boolean shapeCached) {
+        return new ValidationResult(Optional.empty(), true, closestSchemaRecord, null, true, shapeCached);
+    }
+
+    /**
+     * Message was validated against loaded schemas and none of them matched.
+     */
+    public boolean isRejected() {
+        return validated && oSchemaRecord.isEmpty();
+    }
+}
@@ -0,0 +1,92 @@
+package net.osomahe.pulsarmonitor.subscribe.boundary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.InvalidPathException;
+import com.jayway.jsonpath.JsonPath;
+import net.osomahe.pulsarmonitor.subscribe.control.MessageBrowser;
+import net.osomahe.pulsarmonitor.subscribe.entity.PulsarReaderException;
+import net.osomahe.pulsarmonitor.subscribe.entity.ReaderFilter;
+import net.osomahe.pulsarmonitor.subscribe.entity.ReaderInfo;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import javax.annotation.security.PermitAll;
+import javax.inject.Inject;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.util.List;
+import java.util.Map;
+
+@Path("/messages")
+public class MessagesResource {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    @Inject
+    Logger log;
+
+    @Inject
+    MessageBrowser messageBrowser;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "monitor.browser.max-limit")
+    Integer maxLimit;
+
+    @GET
+    @PermitAll
+    @Produces(NDJSON)
+    public Response getMessages(@QueryParam("topic") String topic,
+                                @QueryParam("messageId") String messageId,
+                                @QueryParam("key") String key,
+                                @QueryParam("jsonPath") String jsonPathPredicate,
+                                @QueryParam("from") Long fromEpochSecs,
+                                @QueryParam("to") Long toEpochSecs,
+                                @QueryParam("limit") @DefaultValue("100") int limit) {
+        if (topic == null || topic.isBlank()) {
+            return badRequest("Query parameter topic is required");
+        }
+        JsonPath compiledPredicate;
+        try {
+            compiledPredicate = jsonPathPredicate == null || jsonPathPredicate.isBlank() ? null : JsonPath.compile(jsonPathPredicate);
+        } catch (InvalidPathException | IllegalArgumentException e) {
+            return badRequest("Query parameter jsonPath is not valid json path: " + e.getMessage());
+        }
+        var filter = ReaderFilter.builder()
+                .withTopicName(topic)
+                .withMessageId(messageId)
+                .withKey(key)
+                .withJsonPathPredicate(jsonPathPredicate)
+                .withFromEpochSecs(fromEpochSecs)
+                .withToEpochSecs(toEpochSecs)
+                .build();
+        var resultLimit = Math.max(0, Math.min(limit, maxLimit));
+        StreamingOutput output = outputStream -> {
+            try {
+                messageBrowser.browse(filter, compiledPredicate, resultLimit, readerMessage -> {
+                    outputStream.write(objectMapper.writeValueAsBytes(readerMessage));
+                    outputStream.write('\n');
+                    outputStream.flush();
+                });
+            } catch (PulsarReaderException e) {
+                log.warnf(e, "Cannot browse messages with filter: %s", filter);
+                outputStream.write(objectMapper.writeValueAsBytes(new ReaderInfo(List.of(), e.getMessage())));
+                outputStream.write('\n');
+            }
+        };
+        return Response.ok(output, NDJSON).build();
+    }
+
+    private Response badRequest(String errorMessage) {
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(Map.of("errorMessage", errorMessage))
+                .type("application/json")
+                .build();
+    }
+}
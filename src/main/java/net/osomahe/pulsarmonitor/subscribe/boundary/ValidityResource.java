@@ -0,0 +1,34 @@
+package net.osomahe.pulsarmonitor.subscribe.boundary;
+
+import net.osomahe.pulsarmonitor.subscribe.control.ValidityWindows;
+
+import javax.annotation.security.PermitAll;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+import java.util.Optional;
+
+@Path("/validity")
+public class ValidityResource {
+
+    @Inject
+    ValidityWindows validityWindows;
+
+    @GET
+    @PermitAll
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getValidity(@QueryParam("topic") String topic) {
+        if (!validityWindows.isEnabled()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(Map.of("errorMessage", "Validity windows are not kept, set monitor.validity-windows.enabled=true"))
+                    .build();
+        }
+        var oTopic = Optional.ofNullable(topic).filter(t -> !t.isBlank());
+        return Response.ok(validityWindows.findValidities(oTopic)).build();
+    }
+}
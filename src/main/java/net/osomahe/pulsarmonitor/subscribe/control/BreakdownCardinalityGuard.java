@@ -0,0 +1,169 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.jboss.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Limits number of json path breakdown values which become metric tags, per topic and breakdown tag. Values above
+ * the limit are folded into {@code other} so a producer sending unique values cannot create unbounded number of series.
+ * <p>
+ * First half of the limit is admitted as values come. Then value is admitted only when {@link SpaceSavingSketch}
+ * counted it at least {@link #ADMISSION_COUNT} times, so frequent values still get their own tag while the long tail
+ * of rare values is folded. Admitted value keeps its tag. When the limit is reached, not admitted values are folded
+ * without lock.
+ */
+@ApplicationScoped
+public class BreakdownCardinalityGuard {
+
+    public static final String OTHER = "other";
+
+    static final int ADMISSION_COUNT = 10;
+
+    private static final int SKETCH_CAPACITY_FACTOR = 4;
+
+    private static final Metadata FOLDED_METADATA = Metadata.builder()
+            .withName("pulsarMessageFoldedBreakdowns")
+            .withDescription("Estimated number of distinct json path breakdown values folded into other")
+            .build();
+
+    @Inject
+    Logger log;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Inject
+    JsonPathBreakdowns jsonPathBreakdowns;
+
+    @ConfigProperty(name = "monitor.breakdown-cardinality.enabled")
+    Boolean enabled;
+
+    @ConfigProperty(name = "monitor.breakdown-cardinality.max-values")
+    Integer maxValues;
+
+    private final Map<String, ValueGuard[]> topicGuards = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the same array when all values are admitted, otherwise copy with not admitted values replaced by
+     * {@link #OTHER}.
+     */
+    public String[] guard(String topic, String[] breakdowns) {
+        return guard(topic, breakdowns, false);
+    }
+
+    /**
+     * Admits values of counter restored from {@link CounterCheckpoint} without waiting for the sketch, so they count
+     * against the limit. Values above the limit are folded into {@link #OTHER} as if they came after it was reached.
+     */
+    public String[] restore(String topic, String[] breakdowns) {
+        return guard(topic, breakdowns, true);
+    }
+
+    private String[] guard(String topic, String[] breakdowns, boolean restored) {
+        if (!Boolean.TRUE.equals(enabled)) {
+            return breakdowns;
+        }
+        var guards = topicGuards.get(topic);
+        if (guards == null) {
+            guards = topicGuards.computeIfAbsent(topic, this::createGuards);
+        }
+        var guarded = breakdowns;
+        for (int i = 0; i < breakdowns.length; i++) {
+            var value = restored ? guards[i].restore(breakdowns[i]) : guards[i].admit(breakdowns[i]);
+            if (value != breakdowns[i]) {
+                if (guarded == breakdowns) {
+                    guarded = breakdowns.clone();
+                }
+                guarded[i] = value;
+            }
+        }
+        return guarded;
+    }
+
+    private ValueGuard[] createGuards(String topic) {
+        var tagNames = jsonPathBreakdowns.getTagNames();
+        var guards = new ValueGuard[tagNames.length];
+        for (int i = 0; i < tagNames.length; i++) {
+            var guard = new ValueGuard(topic, tagNames[i], maxValues);
+            metricRegistry.gauge(FOLDED_METADATA, guard::foldedEstimate, new Tag("topic", topic), new Tag("breakdownTag", tagNames[i]));
+            guards[i] = guard;
+        }
+        return guards;
+    }
+
+    private final class ValueGuard {
+
+        private final String topic;
+
+        private final String tagName;
+
+        private final int maxValues;
+
+        private final Set<String> admitted = ConcurrentHashMap.newKeySet();
+
+        private final SpaceSavingSketch sketch;
+
+        private final HyperLogLog folded = new HyperLogLog();
+
+        private volatile boolean full;
+
+        private ValueGuard(String topic, String tagName, int maxValues) {
+            this.topic = topic;
+            this.tagName = tagName;
+            this.maxValues = maxValues;
+            this.sketch = new SpaceSavingSketch(Math.max(1, maxValues * SKETCH_CAPACITY_FACTOR));
+        }
+
+        private String admit(String value) {
+            if (admitted.contains(value)) {
+                return value;
+            }
+            if (full) {
+                folded.add(value);
+                return OTHER;
+            }
+            synchronized (this) {
+                if (admitted.contains(value)) {
+                    return value;
+                }
+                if (admitted.size() < maxValues
+                        && (admitted.size() < maxValues / 2 || sketch.offer(value) >= ADMISSION_COUNT)) {
+                    sketch.remove(value);
+                    admitted.add(value);
+                    full = admitted.size() >= maxValues;
+                    log.debugf("Breakdown %s value %s of topic %s admitted as metric tag", tagName, value, topic);
+                    return value;
+                }
+                folded.add(value);
+                return OTHER;
+            }
+        }
+
+        private synchronized String restore(String value) {
+            if (OTHER.equals(value) || admitted.contains(value)) {
+                return value;
+            }
+            if (admitted.size() < maxValues) {
+                admitted.add(value);
+                full = admitted.size() >= maxValues;
+                return value;
+            }
+            folded.add(value);
+            return OTHER;
+        }
+
+        private long foldedEstimate() {
+            return folded.estimate();
+        }
+    }
+}
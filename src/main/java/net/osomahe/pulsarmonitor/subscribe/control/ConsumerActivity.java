@@ -0,0 +1,43 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import org.apache.pulsar.client.api.Consumer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Number of messages received by single consumer of topics pattern, read by readiness check in background.
+ */
+public class ConsumerActivity {
+
+    public final String topicsPattern;
+
+    private final LongAdder received = new LongAdder();
+
+    private volatile Consumer<byte[]> consumer;
+
+    ConsumerActivity(String topicsPattern) {
+        this.topicsPattern = topicsPattern;
+    }
+
+    void received(long count) {
+        received.add(count);
+    }
+
+    void setConsumer(Consumer<byte[]> consumer) {
+        this.consumer = consumer;
+    }
+
+    Consumer<byte[]> getConsumer() {
+        return consumer;
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public boolean isConnected() {
+        var c = consumer;
+        return c != null && c.isConnected();
+    }
+}
@@ -0,0 +1,232 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import net.osomahe.pulsarmonitor.subscribe.entity.ContentType;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.impl.PulsarClientImpl;
+import org.apache.pulsar.common.naming.TopicName;
+import org.apache.pulsar.common.schema.SchemaInfo;
+import org.apache.pulsar.common.schema.SchemaType;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Classifies message payload from its first bytes before it is parsed, so only payloads looking like json object are
+ * given to json parser.
+ * <p>
+ * Message produced with Pulsar schema carries schema version, type of that schema version is looked up once per topic
+ * and version in background and Avro or Protobuf schema wins over byte heuristics. Until the lookup finishes (or when
+ * it is disabled) Avro is recognized only by single object encoding marker, other binary formats are reported as
+ * {@code binary}.
+ */
+@ApplicationScoped
+public class ContentSniffer {
+
+    /**
+     * Only this number of bytes is checked whether payload is text.
+     */
+    static final int SAMPLE_BYTES = 512;
+
+    private static final int MAX_SCHEMA_VERSIONS = 10_000;
+
+    private static final byte AVRO_MARKER_FIRST = (byte) 0xC3;
+
+    private static final byte AVRO_MARKER_SECOND = (byte) 0x01;
+
+    @Inject
+    Logger log;
+
+    @Inject
+    PulsarClient pulsarClient;
+
+    @ConfigProperty(name = "monitor.message-encoding")
+    String messageEncoding;
+
+    @ConfigProperty(name = "monitor.content-sniffing.schema-lookup")
+    Boolean schemaLookup;
+
+    private final Map<SchemaVersionKey, CompletableFuture<SchemaType>> schemaTypes = new ConcurrentHashMap<>();
+
+    private Charset messageCharset;
+
+    private boolean asciiCompatible;
+
+    private boolean utf8;
+
+    @PostConstruct
+    void init() {
+        messageCharset = Charset.forName(messageEncoding);
+        asciiCompatible = JsonFieldScanner.supports(messageCharset);
+        utf8 = StandardCharsets.UTF_8.equals(messageCharset);
+    }
+
+    public ContentType sniff(Message<byte[]> message, byte[] value) {
+        if (value == null || value.length == 0) {
+            return ContentType.EMPTY;
+        }
+        var schemaType = findSchemaType(message);
+        if (schemaType == SchemaType.AVRO) {
+            return ContentType.AVRO;
+        }
+        if (schemaType == SchemaType.PROTOBUF || schemaType == SchemaType.PROTOBUF_NATIVE) {
+            return ContentType.PROTOBUF;
+        }
+        if (value.length >= 2 && value[0] == AVRO_MARKER_FIRST && value[1] == AVRO_MARKER_SECOND) {
+            return ContentType.AVRO;
+        }
+        return asciiCompatible ? sniffBytes(value) : sniffDecoded(value);
+    }
+
+    private ContentType sniffBytes(byte[] value) {
+        var start = 0;
+        if (utf8 && value.length >= 3 && value[0] == (byte) 0xEF && value[1] == (byte) 0xBB && value[2] == (byte) 0xBF) {
+            start = 3;
+        }
+        while (start < value.length && isWhitespace(value[start])) {
+            start++;
+        }
+        if (start < value.length && value[start] == '{') {
+            return ContentType.JSON_OBJECT;
+        }
+        if (start < value.length && value[start] == '[') {
+            return ContentType.JSON_ARRAY;
+        }
+        return isText(value) ? ContentType.TEXT : ContentType.BINARY;
+    }
+
+    /**
+     * Sample of payload is checked byte by byte, in UTF-8 multibyte sequences have to be well-formed, sequence cut by
+     * end of the sample is accepted.
+     */
+    private boolean isText(byte[] value) {
+        var end = Math.min(value.length, SAMPLE_BYTES);
+        var i = 0;
+        while (i < end) {
+            var b = value[i] & 0xFF;
+            if (b < 0x80) {
+                if (isControl(b)) {
+                    return false;
+                }
+                i++;
+                continue;
+            }
+            if (!utf8) {
+                // ISO-8859-1 has C1 control characters on 0x80-0x9F, US-ASCII does not have these bytes at all
+                if (b < 0xA0 || StandardCharsets.US_ASCII.equals(messageCharset)) {
+                    return false;
+                }
+                i++;
+                continue;
+            }
+            var continuationBytes = b >= 0xC2 && b <= 0xDF ? 1 : b >= 0xE0 && b <= 0xEF ? 2 : b >= 0xF0 && b <= 0xF4 ? 3 : -1;
+            if (continuationBytes < 0) {
+                return false;
+            }
+            for (int j = 1; j <= continuationBytes; j++) {
+                if (i + j >= end) {
+                    return end < value.length;
+                }
+                if ((value[i + j] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += continuationBytes + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Charsets where json structural characters are not single bytes (e.g. UTF-16) are sniffed from decoded sample.
+     */
+    private ContentType sniffDecoded(byte[] value) {
+        var sampleLength = Math.min(value.length, SAMPLE_BYTES);
+        var chars = CharBuffer.allocate(sampleLength);
+        var result = messageCharset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(value, 0, sampleLength), chars, sampleLength == value.length);
+        if (result.isError()) {
+            return ContentType.BINARY;
+        }
+        chars.flip();
+        if (chars.hasRemaining() && chars.get(chars.position()) == '\uFEFF') {
+            chars.get();
+        }
+        while (chars.hasRemaining() && isWhitespace(chars.get(chars.position()))) {
+            chars.get();
+        }
+        if (chars.hasRemaining() && chars.get(chars.position()) == '{') {
+            return ContentType.JSON_OBJECT;
+        }
+        if (chars.hasRemaining() && chars.get(chars.position()) == '[') {
+            return ContentType.JSON_ARRAY;
+        }
+        while (chars.hasRemaining()) {
+            var c = chars.get();
+            if (c < 0x80 && isControl(c) || c >= 0x80 && c < 0xA0) {
+                return ContentType.BINARY;
+            }
+        }
+        return ContentType.TEXT;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isControl(int c) {
+        return (c < 0x20 || c == 0x7F) && c != '\t' && c != '\n' && c != '\r' && c != '\f';
+    }
+
+    /**
+     * Returns type of schema version carried by message, {@code null} when message has no schema version or lookup
+     * was not finished yet.
+     */
+    private SchemaType findSchemaType(Message<byte[]> message) {
+        if (!Boolean.TRUE.equals(schemaLookup) || message == null || message.getTopicName() == null) {
+            return null;
+        }
+        var schemaVersion = message.getSchemaVersion();
+        if (schemaVersion == null || schemaVersion.length == 0) {
+            return null;
+        }
+        var key = new SchemaVersionKey(message.getTopicName(), ByteBuffer.wrap(schemaVersion));
+        var schemaType = schemaTypes.get(key);
+        if (schemaType == null) {
+            if (schemaTypes.size() >= MAX_SCHEMA_VERSIONS) {
+                return null;
+            }
+            schemaType = schemaTypes.computeIfAbsent(key, k -> lookupSchemaType(k.topic, schemaVersion));
+        }
+        return schemaType.getNow(null);
+    }
+
+    private CompletableFuture<SchemaType> lookupSchemaType(String topic, byte[] schemaVersion) {
+        if (!(pulsarClient instanceof PulsarClientImpl pulsarClientImpl)) {
+            return CompletableFuture.completedFuture(SchemaType.NONE);
+        }
+        log.debugf("Looking up schema version of topic %s", topic);
+        return pulsarClientImpl.getLookup().getSchema(TopicName.get(topic), schemaVersion)
+                .thenApply(oSchemaInfo -> oSchemaInfo.map(SchemaInfo::getType).orElse(SchemaType.NONE))
+                .exceptionally(e -> {
+                    log.warnf("Cannot look up schema version of topic %s, payload is classified by its bytes: %s", topic, e.getMessage());
+                    return SchemaType.NONE;
+                });
+    }
+
+    private record SchemaVersionKey(String topic, ByteBuffer schemaVersion) {
+    }
+}
@@ -0,0 +1,303 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.jboss.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Persists {@code pulsarMessage} counters into memory-mapped file so counting continues after restart.
+ * <p>
+ * File starts with header: magic (4), version (4), number of entries (4), end of entries (4) and tag names joined by
+ * new line (2 + bytes). Every entry is aligned to 8 bytes and holds count (8) and tag values (2 + bytes each). New tag
+ * combination is appended, checkpoint of already written counter only overwrites its count when it changed.
+ * <p>
+ * Checkpoint is restored before consumers subscribe. Restored entries stay in place and become slots of their counters,
+ * so the file is never emptied while it holds counts. Entries whose breakdown is folded by cardinality guard keep their
+ * counts, the first entry of the shared counter holds only the rest. File is emptied only when it cannot be restored (other version or
+ * tag names), corrupted tail is dropped.
+ */
+@ApplicationScoped
+public class CounterCheckpoint {
+
+    private static final int MAGIC = 0x504D4350;
+
+    private static final int VERSION = 1;
+
+    private static final int ENTRY_COUNT_OFFSET = 8;
+
+    private static final int DATA_END_OFFSET = 12;
+
+    private static final int TAG_NAMES_OFFSET = 16;
+
+    @Inject
+    Logger log;
+
+    @Inject
+    MessageCounters messageCounters;
+
+    @ConfigProperty(name = "monitor.counter-checkpoint.file")
+    Optional<String> oCheckpointFile;
+
+    @ConfigProperty(name = "monitor.counter-checkpoint.interval-ms")
+    Long intervalMs;
+
+    @ConfigProperty(name = "monitor.counter-checkpoint.max-bytes")
+    Integer maxBytes;
+
+    private final Map<Counter, Slot> slots = new IdentityHashMap<>();
+
+    private Path checkpointPath;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private String tagNames;
+
+    private int entryCount;
+
+    private int dataEnd;
+
+    private boolean full;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Increases counters by counts from checkpoint file and starts periodic checkpoints, does nothing when no file is
+     * configured.
+     */
+    public synchronized void restore() {
+        var oPath = oCheckpointFile.filter(file -> !file.isBlank()).map(Path::of);
+        if (oPath.isEmpty()) {
+            return;
+        }
+        checkpointPath = oPath.get();
+        tagNames = String.join("\n", messageCounters.getTagNames());
+        try {
+            channel = FileChannel.open(checkpointPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes);
+        } catch (IOException e) {
+            log.errorf(e, "Cannot open counter checkpoint file: %s, counters are not persisted", checkpointPath.toAbsolutePath());
+            closeChannel();
+            return;
+        }
+        var restored = readEntries();
+        if (dataEnd == 0) {
+            reset();
+        } else {
+            // entries are already written, header only drops corrupted tail
+            buffer.putInt(DATA_END_OFFSET, dataEnd);
+            buffer.putInt(ENTRY_COUNT_OFFSET, entryCount);
+        }
+        checkpoint();
+        log.infof("Restored %d counters from checkpoint file: %s", restored, checkpointPath.toAbsolutePath());
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "counter-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkpoint, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Restores counters of valid entries and takes them as slots, sets end of entries only when the file can be
+     * continued.
+     */
+    private int readEntries() {
+        dataEnd = 0;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            if (buffer.getInt(0) != 0) {
+                log.warnf("File %s is not counter checkpoint of this version, it is overwritten", checkpointPath.toAbsolutePath());
+            }
+            return 0;
+        }
+        // mapping can be shorter than the file when max bytes was lowered
+        var storedDataEnd = Math.min(buffer.getInt(DATA_END_OFFSET), buffer.capacity());
+        var storedEntryCount = buffer.getInt(ENTRY_COUNT_OFFSET);
+        var restored = 0;
+        var position = TAG_NAMES_OFFSET;
+        try {
+            var storedTagNames = getString(position, storedDataEnd);
+            if (!tagNames.equals(storedTagNames)) {
+                log.infof("Counter checkpoint has tags %s, configured tags are %s, counters are not restored",
+                        storedTagNames.replace('\n', ','), tagNames.replace('\n', ','));
+                return 0;
+            }
+            position = align(position + 2 + buffer.getShort(position));
+            dataEnd = position;
+            var tagCount = tagNames.split("\n").length;
+            for (int i = 0; i < storedEntryCount && position < storedDataEnd; i++) {
+                if (position + 8 > storedDataEnd) {
+                    throw new IllegalStateException("Count at %d exceeds end of entries %d".formatted(position, storedDataEnd));
+                }
+                var slot = new Slot(position);
+                var count = buffer.getLong(position);
+                position += 8;
+                var tagValues = new String[tagCount];
+                for (int j = 0; j < tagCount; j++) {
+                    tagValues[j] = getString(position, storedDataEnd);
+                    position += 2 + buffer.getShort(position);
+                }
+                position = align(position);
+                var counter = messageCounters.restore(tagValues);
+                counter.inc(count);
+                var existing = slots.get(counter);
+                if (existing != null) {
+                    // breakdown folded into other, entry keeps its count and the first entry holds the rest
+                    existing.base += count;
+                } else {
+                    slot.written = count;
+                    slots.put(counter, slot);
+                }
+                restored++;
+                dataEnd = position;
+            }
+        } catch (RuntimeException e) {
+            log.warnf("Counter checkpoint file %s is corrupted, restored only first %d counters: %s", checkpointPath.toAbsolutePath(), restored, e.getMessage());
+        }
+        entryCount = restored;
+        return restored;
+    }
+
+    private void reset() {
+        var tagNameBytes = tagNames.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putShort(TAG_NAMES_OFFSET, (short) tagNameBytes.length);
+        buffer.put(TAG_NAMES_OFFSET + 2, tagNameBytes);
+        entryCount = 0;
+        dataEnd = align(TAG_NAMES_OFFSET + 2 + tagNameBytes.length);
+        buffer.putInt(ENTRY_COUNT_OFFSET, entryCount);
+        buffer.putInt(DATA_END_OFFSET, dataEnd);
+        slots.clear();
+    }
+
+    /**
+     * Appends entries of new counters, overwrites changed counts and forces changed pages to the file.
+     */
+    public synchronized void checkpoint() {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            messageCounters.forEachCounter((tagValues, counter) -> {
+                var slot = slots.get(counter);
+                if (slot == null) {
+                    slot = append(tagValues);
+                    if (slot == null) {
+                        return;
+                    }
+                    slots.put(counter, slot);
+                }
+                var count = counter.getCount() - slot.base;
+                if (count != slot.written) {
+                    buffer.putLong(slot.offset, count);
+                    slot.written = count;
+                }
+            });
+            buffer.force();
+        } catch (RuntimeException e) {
+            log.errorf(e, "Cannot write counter checkpoint file: %s", checkpointPath.toAbsolutePath());
+        }
+    }
+
+    private Slot append(String[] tagValues) {
+        var valueBytes = new byte[tagValues.length][];
+        var length = 8;
+        for (int i = 0; i < tagValues.length; i++) {
+            valueBytes[i] = tagValues[i].getBytes(StandardCharsets.UTF_8);
+            if (valueBytes[i].length > Short.MAX_VALUE) {
+                return null;
+            }
+            length += 2 + valueBytes[i].length;
+        }
+        var entryEnd = align(dataEnd + length);
+        if (entryEnd > buffer.capacity()) {
+            if (!full) {
+                full = true;
+                log.warnf("Counter checkpoint file %s is full, new counters are not persisted, increase monitor.counter-checkpoint.max-bytes",
+                        checkpointPath.toAbsolutePath());
+            }
+            return null;
+        }
+        var slot = new Slot(dataEnd);
+        var position = dataEnd + 8;
+        for (var bytes : valueBytes) {
+            buffer.putShort(position, (short) bytes.length);
+            buffer.put(position + 2, bytes);
+            position += 2 + bytes.length;
+        }
+        buffer.putLong(slot.offset, 0);
+        // header is updated after the entry so the file never points at partially written entry
+        dataEnd = entryEnd;
+        buffer.putInt(DATA_END_OFFSET, dataEnd);
+        buffer.putInt(ENTRY_COUNT_OFFSET, ++entryCount);
+        return slot;
+    }
+
+    private String getString(int position, int limit) {
+        var length = buffer.getShort(position);
+        if (length < 0 || position + 2 + length > limit) {
+            throw new IllegalStateException("String at %d with length %d exceeds end of entries %d".formatted(position, length, limit));
+        }
+        var bytes = new byte[length];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    /**
+     * Writes the last checkpoint, called after consumers are closed.
+     */
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        checkpoint();
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        buffer = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warnf("Cannot close counter checkpoint file: %s", checkpointPath.toAbsolutePath());
+            }
+        }
+    }
+
+    private static final class Slot {
+
+        private final int offset;
+
+        private long written;
+
+        // counts of other entries restored into the same counter
+        private long base;
+
+        private Slot(int offset) {
+            this.offset = offset;
+        }
+    }
+}
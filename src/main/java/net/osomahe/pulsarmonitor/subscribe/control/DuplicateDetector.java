@@ -0,0 +1,264 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import net.osomahe.pulsarmonitor.schema.control.ValidationCache;
+import org.apache.pulsar.client.api.Message;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.jboss.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Detects redelivered and retried messages by Bloom filter of every topic. Message identity is producer name,
+ * partition, key and sequence id (as used by Pulsar deduplication), or key and hash of payload.
+ * <p>
+ * Filter of topic has two generations of preallocated bits, message is inserted into the current one and looked up in
+ * both. After window the older generation is cleared and becomes current, so duplicates are found at least within
+ * one window and at most within two. Bloom filter has no false negatives except messages racing with rotation. Lookup
+ * matches when either generation matches, so every generation is sized for half of configured false positive rate.
+ * Bits of one message are in one cache line of each generation, so check costs two memory accesses regardless of
+ * number of hashes. Blocks are not filled evenly and overloaded blocks raise false positives, filter is enlarged until
+ * estimate of blocked filter is within the rate.
+ */
+@ApplicationScoped
+public class DuplicateDetector {
+
+    private static final Metadata DUPLICATE_METADATA = Metadata.builder()
+            .withName("pulsarMessageDuplicate")
+            .withDescription("Number of consumed pulsar messages which were seen already (redelivered or retried)")
+            .build();
+
+    private static final VarHandle BITS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // bits of one message are set in block of one cache line
+    private static final int BLOCK_WORDS = 8;
+
+    private static final int BLOCK_BITS = BLOCK_WORDS * Long.SIZE;
+
+    private static final int MAX_WORDS = 1 << 26;
+
+    private static final String UNKNOWN = "unknown";
+
+    @Inject
+    Logger log;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @ConfigProperty(name = "monitor.duplicates.enabled")
+    Boolean enabled;
+
+    @ConfigProperty(name = "monitor.duplicates.identity")
+    String identity;
+
+    @ConfigProperty(name = "monitor.duplicates.window-seconds")
+    Long windowSeconds;
+
+    @ConfigProperty(name = "monitor.duplicates.expected-messages")
+    Integer expectedMessages;
+
+    @ConfigProperty(name = "monitor.duplicates.false-positive-rate")
+    Double falsePositiveRate;
+
+    @ConfigProperty(name = "monitor.duplicates.max-topics")
+    Integer maxTopics;
+
+    @ConfigProperty(name = "monitor.duplicates.exclude")
+    Boolean exclude;
+
+    private final Map<String, TopicFilter> filters = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<String, Counter>> counters = new ConcurrentHashMap<>();
+
+    private boolean payloadIdentity;
+
+    private int words;
+
+    private int hashCount;
+
+    private long windowNanos;
+
+    @PostConstruct
+    void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        payloadIdentity = switch (identity) {
+            case "sequence" -> false;
+            case "payload" -> true;
+            default -> throw new IllegalStateException("Duplicate identity %s has to be sequence or payload".formatted(identity));
+        };
+        // lookup matches when either generation matches
+        var generationRate = falsePositiveRate / 2;
+        hashCount = (int) Math.max(1, Math.min(16, Math.round(-Math.log(generationRate) / Math.log(2))));
+        // optimal number of bits of classic filter rounded up to power of two words, doubled while blocked filter is worse
+        var bits = (long) Math.ceil(-expectedMessages * Math.log(generationRate) / (Math.log(2) * Math.log(2)));
+        words = Integer.highestOneBit((int) Math.min(Math.max(bits / 64, BLOCK_WORDS), MAX_WORDS) * 2 - 1);
+        while (words < MAX_WORDS && blockedFalsePositiveRate(words) > generationRate) {
+            words *= 2;
+        }
+        windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+        log.infof("Duplicate detection by %s with %d KB per topic and %d hashes (estimated false positive rate %.5f), window %d s, duplicates are %s",
+                identity, 2L * words * Long.BYTES / 1024, hashCount, 2 * blockedFalsePositiveRate(words), windowSeconds,
+                isExcluded() ? "not counted" : "counted");
+    }
+
+    /**
+     * False positive rate of one full generation. Number of messages in block follows Poisson distribution, rate of
+     * every load is rate of classic filter with bits of one block.
+     */
+    private double blockedFalsePositiveRate(int words) {
+        var load = (double) expectedMessages * BLOCK_WORDS / words;
+        var maxMessages = (int) Math.ceil(load + 10 * Math.sqrt(load) + 10);
+        var logProbability = -load;
+        var rate = 0.0;
+        for (int messages = 0; messages <= maxMessages; messages++) {
+            if (messages > 0) {
+                logProbability += Math.log(load) - Math.log(messages);
+            }
+            var bitSet = 1 - Math.pow(1 - 1.0 / BLOCK_BITS, (double) messages * hashCount);
+            rate += Math.exp(logProbability) * Math.pow(bitSet, hashCount);
+        }
+        return rate;
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * Whether duplicates are left out of {@code pulsarMessage} counter.
+     */
+    public boolean isExcluded() {
+        return Boolean.TRUE.equals(exclude);
+    }
+
+    /**
+     * Inserts message into filter of topic and counts it as duplicate when it was (probably) seen before. Messages of
+     * topics above configured limit are not checked.
+     */
+    public boolean isDuplicate(String topic, Message<byte[]> message, byte[] payload, long nowNanos) {
+        var filter = filters.get(topic);
+        if (filter == null) {
+            if (filters.size() >= maxTopics) {
+                return false;
+            }
+            filter = filters.computeIfAbsent(topic, t -> new TopicFilter(words, nowNanos + windowNanos));
+        }
+        if (nowNanos - filter.rotateAtNanos >= 0) {
+            filter.rotate(nowNanos);
+        }
+        if (!filter.put(identityHash(message, payload), hashCount)) {
+            return false;
+        }
+        findCounter(topic, message.getProducerName()).inc();
+        return true;
+    }
+
+    private long identityHash(Message<byte[]> message, byte[] payload) {
+        var hash = message.hasKey() ? Objects.hashCode(message.getKey()) : 0L;
+        var sequenceId = message.getSequenceId();
+        if (payloadIdentity || sequenceId < 0 || message.getProducerName() == null) {
+            return fmix(hash * 31 + ValidationCache.hashBytes(payload));
+        }
+        hash = hash * 31 + message.getProducerName().hashCode();
+        hash = hash * 31 + Objects.hashCode(message.getTopicName());
+        return fmix(fmix(hash) ^ sequenceId);
+    }
+
+    private Counter findCounter(String topic, String producerName) {
+        var producer = producerName == null ? UNKNOWN : producerName;
+        var producers = counters.get(topic);
+        if (producers == null) {
+            producers = counters.computeIfAbsent(topic, t -> new ConcurrentHashMap<>());
+        }
+        var counter = producers.get(producer);
+        if (counter == null) {
+            counter = producers.computeIfAbsent(producer, p -> metricRegistry.counter(DUPLICATE_METADATA,
+                    new Tag("topic", topic), new Tag("producer", p)));
+        }
+        return counter;
+    }
+
+    // finalizer of MurmurHash3, spreads bits of 64-bit hash
+    private static long fmix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private final class TopicFilter {
+
+        private volatile long[] current;
+
+        private volatile long[] previous;
+
+        private volatile long rotateAtNanos;
+
+        private TopicFilter(int words, long rotateAtNanos) {
+            this.current = new long[words];
+            this.previous = new long[words];
+            this.rotateAtNanos = rotateAtNanos;
+        }
+
+        private synchronized void rotate(long nowNanos) {
+            if (nowNanos - rotateAtNanos < 0) {
+                return;
+            }
+            var cleared = previous;
+            Arrays.fill(cleared, 0);
+            previous = current;
+            current = cleared;
+            rotateAtNanos = nowNanos + windowNanos;
+        }
+
+        /**
+         * Sets bits of hash in current generation and returns whether all of them were already set in current or in
+         * previous generation. All bits of one hash are in the same block of 64 bytes (one cache line) chosen by upper
+         * half of the hash, positions in the block are combinations of lower half and remix of the hash (enhanced
+         * double hashing). Plain double hashing repeats the same few patterns within 512 bits of a block and raises
+         * false positive rate several times above the estimate, cubic term makes positions of different messages
+         * independent. Bit which is already set is not written again.
+         */
+        private boolean put(long hash, int hashCount) {
+            var currentBits = current;
+            var previousBits = previous;
+            var block = ((int) (hash >>> 32) & (currentBits.length / BLOCK_WORDS - 1)) * BLOCK_WORDS;
+            var remix = fmix(hash);
+            var h1 = (int) hash;
+            var h2 = (int) remix | 1;
+            var h3 = (int) (remix >>> 32) | 1;
+            var inCurrent = true;
+            var inPrevious = true;
+            for (int i = 0; i < hashCount; i++) {
+                var bit = (h1 + i * h2 + (i * i * i - i) / 6 * h3) & (BLOCK_BITS - 1);
+                var word = block + (bit >>> 6);
+                var bitMask = 1L << bit;
+                if ((currentBits[word] & bitMask) == 0) {
+                    BITS.getAndBitwiseOr(currentBits, word, bitMask);
+                    inCurrent = false;
+                }
+                if (inPrevious && (previousBits[word] & bitMask) == 0) {
+                    inPrevious = false;
+                }
+            }
+            return inCurrent || inPrevious;
+        }
+    }
+}
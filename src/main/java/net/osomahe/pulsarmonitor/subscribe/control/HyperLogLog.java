@@ -0,0 +1,64 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Estimates number of distinct strings in 1024 registers (about 3% standard error) regardless of their count.
+ * <p>
+ * Values can be added concurrently without lock, register is written only when its rank grows.
+ */
+class HyperLogLog {
+
+    private static final int PRECISION = 10;
+
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private static final VarHandle REGISTER = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    void add(String value) {
+        var hash = hash(value);
+        var index = (int) (hash >>> (64 - PRECISION));
+        var rank = (byte) (Long.numberOfLeadingZeros(hash << PRECISION | (1L << (PRECISION - 1))) + 1);
+        var current = (byte) REGISTER.getOpaque(registers, index);
+        while (rank > current && !REGISTER.compareAndSet(registers, index, current, rank)) {
+            current = (byte) REGISTER.getOpaque(registers, index);
+        }
+    }
+
+    long estimate() {
+        var sum = 0d;
+        var zeros = 0;
+        for (int i = 0; i < REGISTERS; i++) {
+            var register = (byte) REGISTER.getOpaque(registers, i);
+            sum += 1d / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        var estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // linear counting is more precise for small cardinalities
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static long hash(String value) {
+        // FNV-1a over chars finished by murmur3 mixer
+        var hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
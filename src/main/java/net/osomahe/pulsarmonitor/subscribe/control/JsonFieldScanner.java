@@ -0,0 +1,282 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Streaming extractor of fields given by simple dotted paths e.g. {@code customer.address.city}.
+ * <p>
+ * Payload bytes are scanned without building json tree, values of not requested properties are skipped and scanning
+ * stops as soon as all requested fields are found. Only requested values are decoded into the same types as org.json
+ * would create. Works only for charsets where json structural characters are single ASCII bytes.
+ */
+class JsonFieldScanner {
+
+    private final Node root = new Node(null, null);
+
+    private final int fieldCount;
+
+    private final Charset charset;
+
+    /**
+     * Value of path on position i is filled on position i of values array by {@link #scan(byte[], Object[])}.
+     */
+    JsonFieldScanner(List<String[]> paths, Charset charset) {
+        this.fieldCount = paths.size();
+        this.charset = charset;
+        for (int i = 0; i < paths.size(); i++) {
+            var node = root;
+            for (var field : paths.get(i)) {
+                node = node.child(field, charset);
+            }
+            node.index = i;
+        }
+    }
+
+    static boolean supports(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset)
+                || StandardCharsets.ISO_8859_1.equals(charset);
+    }
+
+    /**
+     * Fills found values into array, {@code null} stays for fields which were not found. Json null is filled as
+     * {@link JSONObject#NULL}.
+     *
+     * @return false when payload is not json object, values found before the error are kept
+     */
+    boolean scan(byte[] json, Object[] values) {
+        var scan = new Scan(json, values);
+        try {
+            scan.skipWhitespace();
+            if (scan.peek() != '{') {
+                return false;
+            }
+            scan.object(root);
+            return true;
+        } catch (JSONException | ArrayIndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    private final class Scan {
+
+        private final byte[] bytes;
+
+        private final Object[] values;
+
+        private int pos;
+
+        private int remaining = fieldCount;
+
+        private boolean escaped;
+
+        private Scan(byte[] bytes, Object[] values) {
+            this.bytes = bytes;
+            this.values = values;
+        }
+
+        /**
+         * @return true when all fields were found and scanning can stop
+         */
+        private boolean object(Node node) {
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return false;
+            }
+            while (true) {
+                skipWhitespace();
+                var keyStart = pos;
+                skipString();
+                var keyEnd = pos;
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                var child = node.find(bytes, keyStart, keyEnd, escaped, charset);
+                if (child == null) {
+                    skipValue();
+                } else if (value(child)) {
+                    return true;
+                }
+                skipWhitespace();
+                var next = bytes[pos++];
+                if (next == '}') {
+                    return false;
+                }
+                if (next != ',') {
+                    throw new JSONException("Expected , or } at " + (pos - 1));
+                }
+            }
+        }
+
+        private boolean value(Node node) {
+            var start = pos;
+            if (node.children != null && peek() == '{') {
+                if (object(node)) {
+                    return true;
+                }
+            } else {
+                skipValue();
+            }
+            if (node.index >= 0 && values[node.index] == null) {
+                values[node.index] = decode(start, pos);
+                return --remaining == 0;
+            }
+            return false;
+        }
+
+        private void skipValue() {
+            switch (peek()) {
+                case '"' -> skipString();
+                case '{', '[' -> skipContainer();
+                default -> {
+                    var start = pos;
+                    while (pos < bytes.length && !isDelimiter(bytes[pos])) {
+                        pos++;
+                    }
+                    if (pos == start) {
+                        throw new JSONException("Missing value at " + pos);
+                    }
+                }
+            }
+        }
+
+        private void skipString() {
+            escaped = false;
+            expect('"');
+            while (true) {
+                var b = bytes[pos++];
+                if (b == '"') {
+                    return;
+                }
+                if (b == '\\') {
+                    escaped = true;
+                    pos++;
+                }
+            }
+        }
+
+        private void skipContainer() {
+            var depth = 0;
+            do {
+                var b = bytes[pos];
+                if (b == '"') {
+                    skipString();
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+                pos++;
+            } while (depth > 0);
+        }
+
+        private Object decode(int start, int end) {
+            var first = bytes[start];
+            if (first == '"' && !containsBackslash(start, end)) {
+                return new String(bytes, start + 1, end - start - 2, charset);
+            }
+            var text = new String(bytes, start, end - start, charset);
+            if (first == '"' || first == '{' || first == '[') {
+                return new JSONTokener(text).nextValue();
+            }
+            return JSONObject.stringToValue(text);
+        }
+
+        private boolean containsBackslash(int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (bytes[i] == '\\') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private byte peek() {
+            return bytes[pos];
+        }
+
+        private void expect(char c) {
+            if (bytes[pos] != c) {
+                throw new JSONException("Expected " + c + " at " + pos);
+            }
+            pos++;
+        }
+
+        private void skipWhitespace() {
+            while (pos < bytes.length && bytes[pos] <= ' ' && bytes[pos] >= 0) {
+                pos++;
+            }
+        }
+
+        private boolean isDelimiter(byte b) {
+            return b == ',' || b == '}' || b == ']' || (b <= ' ' && b >= 0);
+        }
+    }
+
+    private static final class Node {
+
+        private final String name;
+
+        private final byte[] nameBytes;
+
+        private int index = -1;
+
+        private List<Node> children;
+
+        private Node(String name, byte[] nameBytes) {
+            this.name = name;
+            this.nameBytes = nameBytes;
+        }
+
+        private Node child(String field, Charset charset) {
+            if (children == null) {
+                children = new ArrayList<>();
+            }
+            for (var child : children) {
+                if (child.name.equals(field)) {
+                    return child;
+                }
+            }
+            var child = new Node(field, field.getBytes(charset));
+            children.add(child);
+            return child;
+        }
+
+        /**
+         * Key span includes quotes, escaped keys are decoded before comparison.
+         */
+        private Node find(byte[] bytes, int keyStart, int keyEnd, boolean escaped, Charset charset) {
+            if (children == null) {
+                return null;
+            }
+            if (escaped) {
+                var key = (String) new JSONTokener(new String(bytes, keyStart, keyEnd - keyStart, charset)).nextValue();
+                for (var child : children) {
+                    if (child.name.equals(key)) {
+                        return child;
+                    }
+                }
+                return null;
+            }
+            for (var child : children) {
+                if (Arrays.equals(bytes, keyStart + 1, keyEnd - 1, child.nameBytes, 0, child.nameBytes.length)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.spi.json.JsonOrgJsonProvider;
+import com.jayway.jsonpath.spi.mapper.JsonOrgMappingProvider;
+import net.osomahe.pulsarmonitor.diagnostic.control.DiagnosticLog;
+import net.osomahe.pulsarmonitor.diagnostic.control.DiagnosticReporter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.json.JSONObject;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+
+/**
+ * User's json path breakdowns, every configured json path is compiled once and provides its own tag of
+ * {@code pulsarMessage} metric.
+ * <p>
+ * Single json path of {@code monitor.user-breakdown-jsonpath} is taken as is (it can contain commas) and uses tag
+ * {@code jsonPathBreakdown}. Paths of {@code monitor.user-breakdown-jsonpaths} can be prefixed by tag name e.g.
+ * {@code region=$.address.region}, otherwise they use tags {@code jsonPathBreakdown2}, {@code jsonPathBreakdown3}...
+ * <p>
+ * Paths are read from json tree parsed for schema validation. Messages which were not parsed (not sampled for
+ * validation) are read from payload bytes, simple dotted paths by {@link JsonFieldScanner} without building tree.
+ */
+@ApplicationScoped
+public class JsonPathBreakdowns {
+
+    static final String DEFAULT_TAG_NAME = "jsonPathBreakdown";
+
+    private static final String UNKNOWN = "unknown";
+
+    private static final Pattern NAMED_PATH_PATTERN = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)=(.+)");
+
+    private static final Pattern SIMPLE_PATH_PATTERN = Pattern.compile("(\\$\\.)?[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)*");
+
+    private static final Set<String> RESERVED_TAG_NAMES = Set.of("topic", "contentType", "jsonSchema", ValidationSampler.SAMPLED_TAG_NAME);
+
+    @Inject
+    Logger log;
+
+    @Inject
+    DiagnosticLog diagnosticLog;
+
+    @ConfigProperty(name = "monitor.user-breakdown-jsonpath")
+    Optional<String> oUserBreakdownJsonPath;
+
+    @ConfigProperty(name = "monitor.user-breakdown-jsonpaths")
+    Optional<List<String>> oUserBreakdownJsonPaths;
+
+    @ConfigProperty(name = "monitor.message-encoding")
+    String messageEncoding;
+
+    private Charset messageCharset;
+
+    private Configuration jsonPathConfiguration;
+
+    private List<Breakdown> breakdowns;
+
+    private String[] tagNames;
+
+    private String[] unknownValues;
+
+    private JsonFieldScanner scanner;
+
+    @PostConstruct
+    void init() {
+        messageCharset = Charset.forName(messageEncoding);
+        jsonPathConfiguration = Configuration.builder()
+                .jsonProvider(new JsonOrgJsonProvider())
+                .mappingProvider(new JsonOrgMappingProvider())
+                .build();
+        breakdowns = new ArrayList<>();
+        var usedTagNames = new HashSet<String>();
+        // the single path is taken as is, it keeps its meaning from before multiple paths were supported
+        var oSinglePath = oUserBreakdownJsonPath.map(String::strip).filter(path -> !path.isEmpty());
+        if (oSinglePath.isPresent()) {
+            add(compile(oSinglePath.get(), 0, false), oSinglePath.get(), usedTagNames);
+        }
+        for (var userPath : oUserBreakdownJsonPaths.orElse(List.of())) {
+            add(compile(userPath.strip(), breakdowns.size(), true), userPath, usedTagNames);
+        }
+        tagNames = breakdowns.isEmpty() ? new String[]{DEFAULT_TAG_NAME} : breakdowns.stream().map(breakdown -> breakdown.tagName).toArray(String[]::new);
+        unknownValues = new String[tagNames.length];
+        Arrays.fill(unknownValues, UNKNOWN);
+
+        var simplePaths = breakdowns.stream().filter(breakdown -> breakdown.fields != null).map(breakdown -> breakdown.fields).toList();
+        if (!simplePaths.isEmpty() && JsonFieldScanner.supports(messageCharset)) {
+            scanner = new JsonFieldScanner(simplePaths, messageCharset);
+        }
+        log.debugf("Json path breakdowns: %s, streaming extractor: %s", breakdowns, scanner != null);
+    }
+
+    private void add(Breakdown breakdown, String userPath, Set<String> usedTagNames) {
+        if (RESERVED_TAG_NAMES.contains(breakdown.tagName) || !usedTagNames.add(breakdown.tagName)) {
+            throw new IllegalStateException("Json path breakdown %s uses tag name %s which is already used".formatted(userPath, breakdown.tagName));
+        }
+        breakdowns.add(breakdown);
+    }
+
+    private Breakdown compile(String userPath, int position, boolean named) {
+        var tagName = position == 0 ? DEFAULT_TAG_NAME : DEFAULT_TAG_NAME + (position + 1);
+        var path = userPath;
+        var matcher = NAMED_PATH_PATTERN.matcher(userPath);
+        if (named && matcher.matches()) {
+            tagName = matcher.group(1);
+            path = matcher.group(2).strip();
+        }
+        String[] fields = null;
+        if (SIMPLE_PATH_PATTERN.matcher(path).matches()) {
+            fields = (path.startsWith("$.") ? path.substring(2) : path).split("\\.");
+        }
+        return new Breakdown(tagName, path, JsonPath.compile(path), fields);
+    }
+
+    /**
+     * Names of breakdown tags in the same order as values returned by {@link #extract(String, Optional, byte[])}.
+     */
+    public String[] getTagNames() {
+        return tagNames;
+    }
+
+    /**
+     * Values of all breakdown tags for message which is not json object.
+     */
+    public String[] getUnknownValues() {
+        return unknownValues;
+    }
+
+    /**
+     * Returns value of every breakdown, {@code unknown} when value is not found. Json tree is used when message was
+     * parsed, otherwise values are read from payload bytes. Paths which cannot be read are reported to
+     * {@link DiagnosticLog} under given topic.
+     */
+    public String[] extract(String topic, Optional<JSONObject> oJsonObject, byte[] json) {
+        return extract(topic, oJsonObject, json, diagnosticLog);
+    }
+
+    /**
+     * Returns value of every breakdown, paths which cannot be read are reported to given reporter.
+     */
+    public String[] extract(String topic, Optional<JSONObject> oJsonObject, byte[] json, DiagnosticReporter reporter) {
+        if (breakdowns.isEmpty()) {
+            return unknownValues;
+        }
+        var values = new String[breakdowns.size()];
+        if (oJsonObject.isPresent()) {
+            // reads from the same org.json tree which was used for schema validation
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readFromTree(topic, breakdowns.get(i), oJsonObject.get(), json, reporter);
+            }
+            return values;
+        }
+        readFromBytes(topic, values, json, reporter);
+        return values;
+    }
+
+    private String readFromTree(String topic, Breakdown breakdown, JSONObject jsonObject, byte[] json, DiagnosticReporter reporter) {
+        try {
+            if (breakdown.fields != null) {
+                Object value = jsonObject;
+                for (var field : breakdown.fields) {
+                    value = value instanceof JSONObject object ? object.opt(field) : null;
+                    if (value == null) {
+                        reporter.report(topic, breakdown.notFoundReason, null, json);
+                        return UNKNOWN;
+                    }
+                }
+                return toValue(value);
+            }
+            return toValue(breakdown.jsonPath.read(jsonObject, jsonPathConfiguration));
+        } catch (Exception e) {
+            reporter.report(topic, breakdown.notFoundReason, e.toString(), json);
+        }
+        return UNKNOWN;
+    }
+
+    private void readFromBytes(String topic, String[] values, byte[] json, DiagnosticReporter reporter) {
+        Object[] scanned = null;
+        if (scanner != null) {
+            scanned = new Object[values.length];
+            scanner.scan(json, scanned);
+        }
+        Object document = null;
+        for (int i = 0, simple = 0; i < values.length; i++) {
+            var breakdown = breakdowns.get(i);
+            values[i] = UNKNOWN;
+            try {
+                if (scanned != null && breakdown.fields != null) {
+                    var value = scanned[simple++];
+                    if (value == null) {
+                        reporter.report(topic, breakdown.notFoundReason, null, json);
+                    } else {
+                        values[i] = toValue(value);
+                    }
+                    continue;
+                }
+                if (document == null) {
+                    document = Configuration.defaultConfiguration().jsonProvider().parse(new ByteArrayInputStream(json), messageCharset.name());
+                }
+                var value = JsonPath.using(Configuration.defaultConfiguration()).parse(document).read(breakdown.jsonPath, String.class);
+                if (value != null) {
+                    values[i] = value;
+                }
+            } catch (Exception e) {
+                reporter.report(topic, breakdown.notFoundReason, e.toString(), json);
+            }
+        }
+    }
+
+    private String toValue(Object value) {
+        return value == null || JSONObject.NULL.equals(value) ? UNKNOWN : value.toString();
+    }
+
+    private static final class Breakdown {
+
+        private final String tagName;
+
+        private final String path;
+
+        private final JsonPath jsonPath;
+
+        private final String[] fields;
+
+        private final String notFoundReason;
+
+        private Breakdown(String tagName, String path, JsonPath jsonPath, String[] fields) {
+            this.tagName = tagName;
+            this.path = path;
+            this.jsonPath = jsonPath;
+            this.fields = fields;
+            this.notFoundReason = "Cannot read jsonPath " + path;
+        }
+
+        @Override
+        public String toString() {
+            return tagName + "=" + path;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Fixed size log-linear histogram of nanosecond values in the spirit of HdrHistogram, 16 sub-buckets per power of two
+ * give about 6% precision.
+ * <p>
+ * Recording increments preallocated bucket and does not allocate. Values are recorded into active interval,
+ * {@link #rotate()} publishes quantiles of finished interval and reuses its buckets for next one.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // values above 2^47 ns (~39 hours) are recorded into the last bucket
+    private static final int MAX_EXPONENT = 47;
+
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private volatile AtomicLongArray active = new AtomicLongArray(BUCKETS);
+
+    private AtomicLongArray spare = new AtomicLongArray(BUCKETS);
+
+    private volatile Snapshot snapshot = new Snapshot(0, 0, 0, 0, 0);
+
+    public void record(long nanos) {
+        active.incrementAndGet(index(nanos));
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Swaps active interval and computes quantiles of the finished one.
+     */
+    public synchronized void rotate() {
+        var finished = active;
+        active = spare;
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += finished.get(i);
+        }
+        snapshot = new Snapshot(count,
+                valueAt(finished, count, 0.5),
+                valueAt(finished, count, 0.99),
+                valueAt(finished, count, 0.999),
+                valueAt(finished, count, 1.0));
+        for (int i = 0; i < BUCKETS; i++) {
+            finished.set(i, 0);
+        }
+        spare = finished;
+    }
+
+    private static long valueAt(AtomicLongArray buckets, long count, double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        var rank = Math.max(1, (long) Math.ceil(count * quantile));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        var shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        var shift = index / SUB_BUCKETS - 1;
+        var mantissa = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + mantissa + 1) << shift) - 1;
+    }
+
+    public static class Snapshot {
+
+        public final long count;
+
+        public final long p50;
+
+        public final long p99;
+
+        public final long p999;
+
+        public final long max;
+
+        Snapshot(long count, long p50, long p99, long p999, long max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+    }
+}
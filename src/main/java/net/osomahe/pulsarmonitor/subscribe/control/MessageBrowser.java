@@ -0,0 +1,183 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import com.jayway.jsonpath.JsonPath;
+import net.osomahe.pulsarmonitor.subscribe.entity.PulsarReaderException;
+import net.osomahe.pulsarmonitor.subscribe.entity.ReaderFilter;
+import net.osomahe.pulsarmonitor.subscribe.entity.ReaderMessage;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Reader;
+import org.apache.pulsar.client.impl.BatchMessageIdImpl;
+import org.apache.pulsar.client.impl.MessageIdImpl;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Reads messages of all topic partitions in parallel and merges them in {@link ReaderMessage} order.
+ * <p>
+ * Every partition is read into small bounded buffer so memory usage does not depend on topic size.
+ */
+@ApplicationScoped
+public class MessageBrowser {
+
+    @Inject
+    Logger log;
+
+    @Inject
+    PulsarClient pulsarClient;
+
+    @ConfigProperty(name = "monitor.browser.partition-buffer")
+    Integer partitionBuffer;
+
+    @ConfigProperty(name = "monitor.message-encoding")
+    String messageEncoding;
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "message-browser-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Passes at most limit messages matching filter to sink, ordered by publish time. Json path predicate of filter is
+     * compiled by caller, so that invalid path is rejected before anything is streamed.
+     */
+    public void browse(ReaderFilter filter, JsonPath jsonPathPredicate, int limit, MessageSink sink) throws IOException {
+        var partitionReaders = new ArrayList<PartitionReader>();
+        var futures = new ArrayList<Future<?>>();
+        try {
+            var startMessageId = filter.getMessageId() == null ? MessageId.earliest : parseMessageId(filter.getTopicName(), filter.getMessageId());
+            var partitionTopics = findPartitionTopics(filter, startMessageId);
+            // readers of all partitions are created concurrently
+            var creations = partitionTopics.stream()
+                    .map(partitionTopic -> pulsarClient.newReader()
+                            .topic(partitionTopic)
+                            .startMessageId(startMessageId)
+                            .startMessageIdInclusive()
+                            .createAsync())
+                    .toList();
+            try {
+                await(creations);
+            } catch (PulsarClientException e) {
+                creations.forEach(creation -> creation.thenAccept(Reader::closeAsync));
+                throw e;
+            }
+            for (int i = 0; i < partitionTopics.size(); i++) {
+                partitionReaders.add(new PartitionReader(partitionTopics.get(i), creations.get(i).join(), filter.getKey(), jsonPathPredicate, toMillis(filter.getToEpochSecs()), Charset.forName(messageEncoding), partitionBuffer));
+            }
+            if (filter.getMessageId() == null && filter.getFromEpochSecs() != null) {
+                await(partitionReaders.stream().map(partitionReader -> partitionReader.reader.seekAsync(toMillis(filter.getFromEpochSecs()))).toList());
+            }
+            partitionReaders.forEach(partitionReader -> futures.add(executor.submit(partitionReader)));
+
+            var heads = new PriorityQueue<PartitionReader>(Comparator.comparing(partitionReader -> partitionReader.current));
+            for (var partitionReader : partitionReaders) {
+                if (partitionReader.advance()) {
+                    heads.add(partitionReader);
+                }
+            }
+            int count = 0;
+            while (!heads.isEmpty() && count < limit) {
+                var partitionReader = heads.poll();
+                sink.accept(partitionReader.current);
+                count++;
+                if (partitionReader.advance()) {
+                    heads.add(partitionReader);
+                }
+            }
+            log.debugf("Browsing %s returned %d messages", filter, count);
+        } catch (PulsarClientException e) {
+            throw new PulsarReaderException(filter.getTopicName(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            partitionReaders.forEach(PartitionReader::cancel);
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void await(List<? extends CompletableFuture<?>> futures) throws PulsarClientException {
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+        } catch (ExecutionException e) {
+            throw PulsarClientException.unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(e);
+        }
+    }
+
+    /**
+     * Message id identifies partition so only that partition is read when message id is used.
+     */
+    private List<String> findPartitionTopics(ReaderFilter filter, MessageId startMessageId) throws PulsarClientException {
+        List<String> partitionTopics;
+        try {
+            partitionTopics = pulsarClient.getPartitionsForTopic(filter.getTopicName()).get();
+        } catch (ExecutionException e) {
+            throw PulsarClientException.unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(e);
+        }
+        if (startMessageId instanceof MessageIdImpl messageId && partitionTopics.size() > 1) {
+            var partitionSuffix = "-partition-" + messageId.getPartitionIndex();
+            return partitionTopics.stream().filter(partitionTopic -> partitionTopic.endsWith(partitionSuffix)).toList();
+        }
+        return partitionTopics;
+    }
+
+    /**
+     * Parses message id in its string form ledgerId:entryId:partitionIndex[:batchIndex].
+     */
+    private MessageId parseMessageId(String topicName, String messageId) {
+        try {
+            var parts = messageId.split(":");
+            if (parts.length == 3) {
+                return new MessageIdImpl(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+            }
+            if (parts.length == 4) {
+                return new BatchMessageIdImpl(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+            }
+            throw new IOException("Message id has to be in format ledgerId:entryId:partitionIndex[:batchIndex]");
+        } catch (NumberFormatException e) {
+            throw new PulsarReaderException(topicName, messageId, new IOException(e));
+        } catch (IOException e) {
+            throw new PulsarReaderException(topicName, messageId, e);
+        }
+    }
+
+    private Long toMillis(Long epochSecs) {
+        return epochSecs == null ? null : epochSecs * 1000;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    public interface MessageSink {
+        void accept(ReaderMessage readerMessage) throws IOException;
+    }
+}
@@ -0,0 +1,187 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.jboss.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+
+
+/**
+ * Cache of resolved {@code pulsarMessage} counters keyed by tag values.
+ * <p>
+ * Lookup of already registered tag combination walks nested maps by tag value and does not allocate. Metric registry
+ * is used only when tag combination is seen for the first time. Breakdown values not registered yet pass
+ * {@link BreakdownCardinalityGuard} first.
+ */
+@ApplicationScoped
+public class MessageCounters {
+
+    static final Metadata PULSAR_MESSAGE_METADATA = Metadata.builder()
+            .withName("pulsarMessage")
+            .withDescription("Displays number of consumed pulsar messages")
+            .build();
+
+    @Inject
+    Logger log;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Inject
+    JsonPathBreakdowns jsonPathBreakdowns;
+
+    @Inject
+    BreakdownCardinalityGuard cardinalityGuard;
+
+    @Inject
+    ValidationSampler validationSampler;
+
+    private final Node root = new Node();
+
+    private final ConcurrentHashMap<String, String> internedValues = new ConcurrentHashMap<>();
+
+    private final Queue<Node> registeredNodes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Counter of message which was (or was not) chosen by {@link ValidationSampler}, tag {@code sampled} is used only
+     * when sampling is enabled. Breakdown values are in the same order as {@link JsonPathBreakdowns#getTagNames()}.
+     */
+    public Counter counter(String topic, String contentType, String schema, boolean sampled, String[] breakdowns) {
+        var sampledValue = sampledValue(sampled);
+        var counter = root.find(topic, contentType, schema, sampledValue, breakdowns);
+        if (counter != null) {
+            return counter;
+        }
+        var guardedBreakdowns = cardinalityGuard.guard(topic, breakdowns);
+        if (guardedBreakdowns != breakdowns) {
+            counter = root.find(topic, contentType, schema, sampledValue, guardedBreakdowns);
+            if (counter != null) {
+                return counter;
+            }
+        }
+        return register(topic, contentType, schema, sampledValue, guardedBreakdowns);
+    }
+
+    private String sampledValue(boolean sampled) {
+        return validationSampler.isEnabled() ? String.valueOf(sampled) : null;
+    }
+
+    /**
+     * Names of all tags in the same order as values passed by {@link #forEachCounter(BiConsumer)}.
+     */
+    public String[] getTagNames() {
+        var breakdownTagNames = jsonPathBreakdowns.getTagNames();
+        var tagNames = new ArrayList<String>(List.of("topic", "contentType", "jsonSchema"));
+        if (validationSampler.isEnabled()) {
+            tagNames.add(ValidationSampler.SAMPLED_TAG_NAME);
+        }
+        tagNames.addAll(Arrays.asList(breakdownTagNames));
+        return tagNames.toArray(String[]::new);
+    }
+
+    /**
+     * Registers counter with tag values ordered as {@link #getTagNames()}, used for counters restored from
+     * {@link CounterCheckpoint}. Breakdown values are admitted by {@link BreakdownCardinalityGuard#restore} so they
+     * count against its limit, values above the limit share counter of {@link BreakdownCardinalityGuard#OTHER}.
+     */
+    public Counter restore(String[] tagValues) {
+        var breakdownStart = validationSampler.isEnabled() ? 4 : 3;
+        var sampledValue = validationSampler.isEnabled() ? tagValues[3] : null;
+        var breakdowns = cardinalityGuard.restore(tagValues[0], Arrays.copyOfRange(tagValues, breakdownStart, tagValues.length));
+        var counter = root.find(tagValues[0], tagValues[1], tagValues[2], sampledValue, breakdowns);
+        return counter != null ? counter : register(tagValues[0], tagValues[1], tagValues[2], sampledValue, breakdowns);
+    }
+
+    /**
+     * Passes every registered counter with its tag values ordered as {@link #getTagNames()}.
+     */
+    public void forEachCounter(BiConsumer<String[], Counter> action) {
+        registeredNodes.forEach(node -> action.accept(node.tagValues, node.counter));
+    }
+
+    private synchronized Counter register(String topic, String contentType, String schema, String sampledValue, String[] breakdowns) {
+        var node = root.child(intern(topic))
+                .child(intern(contentType))
+                .child(intern(schema));
+        if (sampledValue != null) {
+            node = node.child(sampledValue);
+        }
+        for (var breakdown : breakdowns) {
+            node = node.child(intern(breakdown));
+        }
+        if (node.counter == null) {
+            var tagNames = getTagNames();
+            var tagValues = new String[tagNames.length];
+            tagValues[0] = intern(topic);
+            tagValues[1] = intern(contentType);
+            tagValues[2] = intern(schema);
+            var breakdownStart = 3;
+            if (sampledValue != null) {
+                tagValues[breakdownStart++] = sampledValue;
+            }
+            for (int i = 0; i < breakdowns.length; i++) {
+                tagValues[breakdownStart + i] = intern(breakdowns[i]);
+            }
+            var tags = new Tag[tagNames.length];
+            for (int i = 0; i < tags.length; i++) {
+                tags[i] = new Tag(tagNames[i], tagValues[i]);
+            }
+            log.debugf("Registering counter with tags: %s", (Object) tags);
+            node.tagValues = tagValues;
+            node.counter = metricRegistry.counter(PULSAR_MESSAGE_METADATA, tags);
+            registeredNodes.add(node);
+            // the same tags differing only in sampled are not new for the topic
+            if (sampledValue == null || root.find(topic, contentType, schema, String.valueOf(!Boolean.parseBoolean(sampledValue)), breakdowns) == null) {
+                validationSampler.newTagCombination(topic);
+            }
+        }
+        return node.counter;
+    }
+
+    private String intern(String value) {
+        return internedValues.computeIfAbsent(value, v -> v);
+    }
+
+    private static final class Node {
+
+        private final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>();
+
+        private volatile Counter counter;
+
+        private String[] tagValues;
+
+        private Node child(String value) {
+            return children.computeIfAbsent(value, v -> new Node());
+        }
+
+        private Counter find(String topic, String contentType, String schema, String sampledValue, String[] breakdowns) {
+            var node = children.get(topic);
+            if (node == null) {
+                return null;
+            }
+            node = node.children.get(contentType);
+            if (node == null) {
+                return null;
+            }
+            node = node.children.get(schema);
+            if (node != null && sampledValue != null) {
+                node = node.children.get(sampledValue);
+            }
+            for (int i = 0; node != null && i < breakdowns.length; i++) {
+                node = node.children.get(breakdowns[i]);
+            }
+            return node == null ? null : node.counter;
+        }
+    }
+}
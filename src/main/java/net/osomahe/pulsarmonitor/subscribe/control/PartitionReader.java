@@ -0,0 +1,121 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import com.jayway.jsonpath.JsonPath;
+import net.osomahe.pulsarmonitor.subscribe.entity.PulsarReaderException;
+import net.osomahe.pulsarmonitor.subscribe.entity.ReaderMessage;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Reader;
+
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Reads single partition on its own thread into small bounded buffer, filters are applied while reading so only
+ * matching messages are buffered. Reading ends at the last message available when reading started or when publish time
+ * passes upper bound.
+ */
+class PartitionReader implements Runnable {
+
+    final String topicName;
+
+    final Reader<byte[]> reader;
+
+    private final String key;
+
+    private final JsonPath jsonPathPredicate;
+
+    private final Long toEpochMillis;
+
+    private final Charset charset;
+
+    private final BlockingQueue<ReaderMessage> buffer;
+
+    private volatile boolean finished;
+
+    private volatile boolean cancelled;
+
+    private volatile PulsarClientException error;
+
+    ReaderMessage current;
+
+    PartitionReader(String topicName, Reader<byte[]> reader, String key, JsonPath jsonPathPredicate, Long toEpochMillis, Charset charset, int bufferSize) {
+        this.topicName = topicName;
+        this.reader = reader;
+        this.key = key;
+        this.jsonPathPredicate = jsonPathPredicate;
+        this.toEpochMillis = toEpochMillis;
+        this.charset = charset;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!cancelled && reader.hasMessageAvailable()) {
+                var message = reader.readNext(1, TimeUnit.SECONDS);
+                if (message == null) {
+                    continue;
+                }
+                if (toEpochMillis != null && message.getPublishTime() > toEpochMillis) {
+                    break;
+                }
+                if (key != null && !key.equals(message.getKey())) {
+                    continue;
+                }
+                var readerMessage = new ReaderMessage(message, charset);
+                if (matches(readerMessage)) {
+                    buffer.put(readerMessage);
+                }
+            }
+        } catch (PulsarClientException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finished = true;
+            reader.closeAsync();
+        }
+    }
+
+    private boolean matches(ReaderMessage readerMessage) {
+        if (jsonPathPredicate == null) {
+            return true;
+        }
+        try {
+            Object result = JsonPath.parse(readerMessage.payload).read(jsonPathPredicate);
+            return result instanceof Collection<?> collection ? !collection.isEmpty() : result != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Moves {@link #current} to next buffered message, returns false when partition is fully read.
+     */
+    boolean advance() throws InterruptedException {
+        current = null;
+        while (current == null) {
+            current = buffer.poll(100, TimeUnit.MILLISECONDS);
+            if (current == null && finished) {
+                current = buffer.poll();
+                if (current == null) {
+                    if (error != null) {
+                        throw new PulsarReaderException(topicName, error);
+                    }
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    void cancel() {
+        cancelled = true;
+        buffer.clear();
+        reader.closeAsync();
+    }
+}
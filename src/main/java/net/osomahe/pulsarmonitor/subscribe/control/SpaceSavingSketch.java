@@ -0,0 +1,139 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Space-Saving heavy hitter sketch monitoring at most capacity values. Value which is not monitored replaces the one
+ * with the lowest count and inherits that count as its possible overestimation, so every value occurring more often
+ * than {@code total / capacity} is guaranteed to be monitored.
+ * <p>
+ * Counters are kept in Stream-Summary structure, list of buckets of equal count in ascending order, so offer and
+ * replacement of the lowest counter take constant time. Not thread safe.
+ */
+class SpaceSavingSketch {
+
+    private final int capacity;
+
+    private final Map<String, Counter> counters;
+
+    private Bucket lowest;
+
+    SpaceSavingSketch(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Counts occurrence of value and returns its guaranteed count, the number of occurrences since it is monitored.
+     */
+    long offer(String value) {
+        var counter = counters.get(value);
+        if (counter == null) {
+            if (counters.size() >= capacity) {
+                counter = lowest.first;
+                counters.remove(counter.value);
+                counter.value = value;
+                counter.error = lowest.count;
+            } else {
+                counter = new Counter(value);
+            }
+            counters.put(value, counter);
+        }
+        increment(counter);
+        return counter.bucket.count - counter.error;
+    }
+
+    void remove(String value) {
+        var counter = counters.remove(value);
+        if (counter != null) {
+            detach(counter);
+        }
+    }
+
+    private void increment(Counter counter) {
+        var current = counter.bucket;
+        var count = current == null ? 1 : current.count + 1;
+        var next = current == null ? lowest : current.next;
+        if (next == null || next.count != count) {
+            next = new Bucket(count);
+            next.prev = current;
+            next.next = current == null ? lowest : current.next;
+            if (next.next != null) {
+                next.next.prev = next;
+            }
+            if (current == null) {
+                lowest = next;
+            } else {
+                current.next = next;
+            }
+        }
+        if (current != null) {
+            detach(counter);
+        }
+        counter.prev = null;
+        counter.next = next.first;
+        if (next.first != null) {
+            next.first.prev = counter;
+        }
+        next.first = counter;
+        counter.bucket = next;
+    }
+
+    private void detach(Counter counter) {
+        var bucket = counter.bucket;
+        if (counter.prev != null) {
+            counter.prev.next = counter.next;
+        } else {
+            bucket.first = counter.next;
+        }
+        if (counter.next != null) {
+            counter.next.prev = counter.prev;
+        }
+        counter.bucket = null;
+        if (bucket.first == null) {
+            if (bucket.prev != null) {
+                bucket.prev.next = bucket.next;
+            } else {
+                lowest = bucket.next;
+            }
+            if (bucket.next != null) {
+                bucket.next.prev = bucket.prev;
+            }
+        }
+    }
+
+    private static final class Bucket {
+
+        private final long count;
+
+        private Bucket prev;
+
+        private Bucket next;
+
+        private Counter first;
+
+        private Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    private static final class Counter {
+
+        private String value;
+
+        // count of the replaced value, possible overestimation
+        private long error;
+
+        private Bucket bucket;
+
+        private Counter prev;
+
+        private Counter next;
+
+        private Counter(String value) {
+            this.value = value;
+        }
+    }
+}
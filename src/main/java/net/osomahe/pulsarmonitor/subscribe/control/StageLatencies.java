@@ -0,0 +1,154 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+
+/**
+ * Per topic histograms of publish-to-receive lag and time spent in processing stages. Quantiles of last finished
+ * interval are exposed as {@code pulsarMessageLatency} gauges tagged by topic, stage and quantile.
+ */
+@ApplicationScoped
+public class StageLatencies {
+
+    public static final String LAG = "lag";
+
+    public static final String PARSE = "parse";
+
+    public static final String SCHEMA = "schema";
+
+    public static final String BREAKDOWN = "breakdown";
+
+    private static final Metadata LATENCY_METADATA = Metadata.builder()
+            .withName("pulsarMessageLatency")
+            .withDescription("Publish-to-receive lag and processing stage durations of pulsar messages in last interval")
+            .withUnit(MetricUnits.SECONDS)
+            .build();
+
+    private static final TopicLatencies DISABLED = new TopicLatencies(false);
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @ConfigProperty(name = "monitor.latency.enabled")
+    Boolean enabled;
+
+    @ConfigProperty(name = "monitor.latency.interval-seconds")
+    Integer intervalSeconds;
+
+    private final Map<String, TopicLatencies> topicLatencies = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init() {
+        if (!Boolean.TRUE.equals(enabled)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "latency-histogram-rotation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::rotate, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public TopicLatencies forTopic(String topic) {
+        if (scheduler == null) {
+            return DISABLED;
+        }
+        var latencies = topicLatencies.get(topic);
+        if (latencies == null) {
+            latencies = topicLatencies.computeIfAbsent(topic, this::register);
+        }
+        return latencies;
+    }
+
+    private TopicLatencies register(String topic) {
+        var latencies = new TopicLatencies(true);
+        registerGauges(topic, LAG, latencies.lag);
+        registerGauges(topic, PARSE, latencies.parse);
+        registerGauges(topic, SCHEMA, latencies.schema);
+        registerGauges(topic, BREAKDOWN, latencies.breakdown);
+        return latencies;
+    }
+
+    private void registerGauges(String topic, String stage, LatencyHistogram histogram) {
+        registerGauge(topic, stage, "0.5", histogram, snapshot -> snapshot.p50);
+        registerGauge(topic, stage, "0.99", histogram, snapshot -> snapshot.p99);
+        registerGauge(topic, stage, "0.999", histogram, snapshot -> snapshot.p999);
+        registerGauge(topic, stage, "1.0", histogram, snapshot -> snapshot.max);
+    }
+
+    private void registerGauge(String topic, String stage, String quantile, LatencyHistogram histogram,
+                               ToLongFunction<LatencyHistogram.Snapshot> value) {
+        metricRegistry.gauge(LATENCY_METADATA,
+                () -> value.applyAsLong(histogram.getSnapshot()) / 1_000_000_000d,
+                new Tag("topic", topic), new Tag("stage", stage), new Tag("quantile", quantile));
+    }
+
+    private void rotate() {
+        topicLatencies.values().forEach(TopicLatencies::rotate);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public static class TopicLatencies {
+
+        private final boolean enabled;
+
+        final LatencyHistogram lag = new LatencyHistogram();
+
+        final LatencyHistogram parse = new LatencyHistogram();
+
+        final LatencyHistogram schema = new LatencyHistogram();
+
+        final LatencyHistogram breakdown = new LatencyHistogram();
+
+        private TopicLatencies(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Records lag from event time (or publish time when event time is not set) and durations between stage
+         * timestamps taken by {@link System#nanoTime()}.
+         */
+        public void record(long eventTimeMillis, long startNanos, long parsedNanos, long schemaNanos, long breakdownNanos) {
+            if (!enabled) {
+                return;
+            }
+            if (eventTimeMillis > 0) {
+                lag.record(TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - eventTimeMillis)));
+            }
+            parse.record(parsedNanos - startNanos);
+            schema.record(schemaNanos - parsedNanos);
+            breakdown.record(breakdownNanos - schemaNanos);
+        }
+
+        private void rotate() {
+            lag.rotate();
+            parse.rotate();
+            schema.rotate();
+            breakdown.rotate();
+        }
+    }
+}
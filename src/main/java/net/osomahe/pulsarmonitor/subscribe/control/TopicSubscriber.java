@@ -3,10 +3,14 @@ package net.osomahe.pulsarmonitor.subscribe.control;
 import io.quarkus.runtime.ShutdownEvent;
 import io.quarkus.runtime.Startup;
 import io.quarkus.runtime.StartupEvent;
+import net.osomahe.pulsarmonitor.info.control.StartupTimings;
+import org.apache.pulsar.client.api.BatchReceivePolicy;
 import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.ConsumerBuilder;
 import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.api.SubscriptionInitialPosition;
+import org.apache.pulsar.client.api.SubscriptionType;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
@@ -15,6 +19,14 @@ import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 
@@ -32,32 +44,177 @@ public class TopicSubscriber {
     @ConfigProperty(name = "monitor.topics-patterns")
     String[] topicsPatters;
 
+    @ConfigProperty(name = "monitor.subscription-type")
+    SubscriptionType subscriptionType;
+
+    @ConfigProperty(name = "monitor.consumers-per-pattern")
+    Integer consumersPerPattern;
+
+    @ConfigProperty(name = "monitor.batch-receive.enabled")
+    Boolean batchReceiveEnabled;
+
+    @ConfigProperty(name = "monitor.batch-receive.max-messages")
+    Integer batchMaxMessages;
+
+    @ConfigProperty(name = "monitor.batch-receive.max-bytes")
+    Integer batchMaxBytes;
+
+    @ConfigProperty(name = "monitor.batch-receive.timeout-ms")
+    Integer batchTimeoutMs;
+
+    @ConfigProperty(name = "monitor.batch-receive.workers")
+    Integer batchWorkers;
+
     @Inject
     PulsarClient pulsarClient;
 
     @Inject
     TopicsListener topicsListener;
 
+    @Inject
+    StartupTimings startupTimings;
+
+    @Inject
+    ValidationPipeline validationPipeline;
+
+    @Inject
+    CounterCheckpoint counterCheckpoint;
+
     List<Consumer<byte[]>> consumers;
 
+    private final List<ConsumerActivity> consumerActivities = new CopyOnWriteArrayList<>();
+
+    ExecutorService batchExecutor;
+
+    volatile boolean running;
+
     void startup(@Observes StartupEvent event) {
-        consumers = Arrays.stream(topicsPatters).flatMap(this::createConsumer).toList();
+        if (consumersPerPattern > 1 && subscriptionType == SubscriptionType.Exclusive) {
+            throw new IllegalStateException("Subscription type %s allows only one consumer per topics pattern, use Failover, Shared or Key_Shared".formatted(subscriptionType));
+        }
+        // counters continue from the last checkpoint before any message is counted
+        counterCheckpoint.restore();
+        var start = System.nanoTime();
+        running = true;
+        // all consumers subscribe concurrently
+        var subscriptions = Arrays.stream(topicsPatters).flatMap(this::createConsumers).toList();
+        try {
+            CompletableFuture.allOf(subscriptions.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            // all subscriptions are finished, consumers which subscribed would keep receiving without application
+            closeSubscribed(subscriptions);
+            throw e.getCause() instanceof IllegalStateException ise ? ise : new IllegalStateException(e.getCause());
+        }
+        consumers = subscriptions.stream().map(CompletableFuture::join).toList();
+        startupTimings.record(StartupTimings.SUBSCRIPTION, System.nanoTime() - start);
+        startupTimings.recordUptime(StartupTimings.UNTIL_SUBSCRIBED);
+        log.infof("Subscribed %d consumers in %d ms", consumers.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (Boolean.TRUE.equals(batchReceiveEnabled)) {
+            startBatchWorkers();
+        }
+    }
+
+    private void closeSubscribed(List<CompletableFuture<Consumer<byte[]>>> subscriptions) {
+        subscriptions.stream()
+                .filter(subscription -> !subscription.isCompletedExceptionally())
+                .map(CompletableFuture::join)
+                .forEach(Consumer::closeAsync);
+    }
+
+    private Stream<CompletableFuture<Consumer<byte[]>>> createConsumers(String topicsPattern) {
+        return IntStream.range(0, consumersPerPattern).mapToObj(i -> createConsumer(topicsPattern));
+    }
+
+    private CompletableFuture<Consumer<byte[]>> createConsumer(String topicsPattern) {
+        var activity = new ConsumerActivity(topicsPattern);
+        consumerActivities.add(activity);
+        ConsumerBuilder<byte[]> consumerBuilder = pulsarClient.newConsumer()
+                .topicsPattern(topicsPattern)
+                .subscriptionInitialPosition(SubscriptionInitialPosition.Earliest)
+                .subscriptionType(subscriptionType)
+                .subscriptionName(subscriberName);
+        if (Boolean.TRUE.equals(batchReceiveEnabled)) {
+            consumerBuilder = consumerBuilder.batchReceivePolicy(BatchReceivePolicy.builder()
+                    .maxNumMessages(batchMaxMessages)
+                    .maxNumBytes(batchMaxBytes)
+                    .timeout(batchTimeoutMs, TimeUnit.MILLISECONDS)
+                    .build());
+        } else {
+            consumerBuilder = consumerBuilder.messageListener((consumer, message) -> {
+                activity.received(1);
+                topicsListener.received(consumer, message);
+            });
+        }
+        return consumerBuilder.subscribeAsync().handle((consumer, e) -> {
+            if (e != null) {
+                throw new IllegalStateException("Cannot subscribe to topicsPattern %s".formatted(topicsPattern), e);
+            }
+            activity.setConsumer(consumer);
+            return consumer;
+        });
+    }
+
+    /**
+     * Activity of every consumer in the order of topics patterns.
+     */
+    public List<ConsumerActivity> getConsumerActivities() {
+        return consumerActivities;
     }
 
-    private Stream<Consumer<byte[]>> createConsumer(String topicsPattern) {
+    private void startBatchWorkers() {
+        var threadNumber = new AtomicInteger();
+        batchExecutor = Executors.newFixedThreadPool(consumers.size() * batchWorkers, runnable -> {
+            var thread = new Thread(runnable, "pulsar-batch-receive-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (var activity : consumerActivities) {
+            for (int i = 0; i < batchWorkers; i++) {
+                batchExecutor.execute(() -> receiveBatches(activity));
+            }
+        }
+    }
+
+    private void receiveBatches(ConsumerActivity activity) {
+        var consumer = activity.getConsumer();
+        while (running) {
+            try {
+                var messages = consumer.batchReceive();
+                if (messages.size() > 0) {
+                    activity.received(messages.size());
+                    topicsListener.receivedBatch(consumer, messages);
+                }
+            } catch (PulsarClientException.AlreadyClosedException e) {
+                return;
+            } catch (PulsarClientException e) {
+                if (running) {
+                    log.warnf(e, "Cannot receive batch of messages from topics: %s", consumer.getTopic());
+                    pause();
+                }
+            } catch (Exception e) {
+                log.errorf(e, "Cannot process batch of messages from topics: %s", consumer.getTopic());
+            }
+        }
+    }
+
+    private void pause() {
         try {
-            return Stream.of(pulsarClient.newConsumer()
-                    .topicsPattern(topicsPattern)
-                    .subscriptionInitialPosition(SubscriptionInitialPosition.Earliest)
-                    .subscriptionName(subscriberName)
-                    .messageListener(topicsListener)
-                    .subscribe());
-        } catch (PulsarClientException e) {
-            throw new IllegalStateException("Cannot subscribe to topicsPattern %s".formatted(topicsPattern), e);
+            Thread.sleep(batchTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     void shutdown(@Observes ShutdownEvent event) {
-        consumers.stream().forEach(Consumer::closeAsync);
+        running = false;
+        if (batchExecutor != null) {
+            batchExecutor.shutdownNow();
+        }
+        if (consumers != null) {
+            consumers.forEach(Consumer::closeAsync);
+        }
+        // queued messages are already acknowledged, they are counted before the last checkpoint
+        validationPipeline.close();
+        counterCheckpoint.close();
     }
 }
@@ -1,15 +1,14 @@
 package net.osomahe.pulsarmonitor.subscribe.control;
 
-import com.jayway.jsonpath.JsonPath;
 import net.osomahe.pulsarmonitor.schema.boundary.SchemaValidationFacade;
-import net.osomahe.pulsarmonitor.schema.entity.SchemaRecord;
+import net.osomahe.pulsarmonitor.schema.entity.ValidationResult;
+import net.osomahe.pulsarmonitor.subscribe.entity.ContentType;
 import org.apache.pulsar.client.api.Consumer;
 import org.apache.pulsar.client.api.Message;
 import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.Messages;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.eclipse.microprofile.metrics.Metadata;
-import org.eclipse.microprofile.metrics.MetricRegistry;
-import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.metrics.Counter;
 import org.jboss.logging.Logger;
 import org.json.JSONObject;
 
@@ -17,7 +16,11 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 
@@ -28,6 +31,9 @@ public class TopicsListener implements MessageListener<byte[]> {
 
     private static final String UNKNOWN = "unknown";
 
+    // grouped name of every partition topic, pattern is applied once per topic instead of once per message
+    private final Map<String, String> groupedTopicNames = new ConcurrentHashMap<>();
+
     @Inject
     Logger log;
 
@@ -35,10 +41,28 @@ public class TopicsListener implements MessageListener<byte[]> {
     SchemaValidationFacade facadeSchema;
 
     @Inject
-    MetricRegistry metricRegistry;
+    MessageCounters messageCounters;
+
+    @Inject
+    ValidationPipeline validationPipeline;
+
+    @Inject
+    StageLatencies stageLatencies;
 
-    @ConfigProperty(name = "monitor.user-breakdown-jsonpath")
-    Optional<String> oUserBreakdownJsonPath;
+    @Inject
+    JsonPathBreakdowns jsonPathBreakdowns;
+
+    @Inject
+    ContentSniffer contentSniffer;
+
+    @Inject
+    ValidationSampler validationSampler;
+
+    @Inject
+    ValidityWindows validityWindows;
+
+    @Inject
+    DuplicateDetector duplicateDetector;
 
     @ConfigProperty(name = "monitor.group-partitioned")
     Boolean groupPartitioned;
@@ -56,63 +80,116 @@ public class TopicsListener implements MessageListener<byte[]> {
     @Override
     public void received(Consumer<byte[]> consumer, Message<byte[]> message) {
         consumer.acknowledgeAsync(message);
-        var messageTopic = getTopicName(message);
-        var messageValue = new String(message.getValue(), messageCharset);
-
-        var oJsonObject = facadeSchema.createJsonObject(messageValue);
-        var oSchema = oJsonObject.flatMap(facadeSchema::findSchemaRecord);
-        var oUserBreakdown = findJsonPathBreakdown(messageValue);
-
-        metricRegistry.counter(Metadata.builder()
-                                .withName("pulsarMessage")
-                                .withDescription("Displays number of consumed pulsar messages")
-                                .build(),
-                        getTags(messageTopic, oJsonObject, oSchema, oUserBreakdown))
-                .inc();
+        if (validationPipeline.isEnabled()) {
+            validationPipeline.submit(consumer, message);
+        } else {
+            processAndCount(message);
+        }
     }
 
-    private String getTopicName(Message<byte[]> message) {
-        if (message == null || message.getTopicName() == null) {
-            return null;
+    void processAndCount(Message<byte[]> message) {
+        var counter = process(message);
+        if (counter != null) {
+            counter.inc();
         }
-        var topicName = message.getTopicName();
-        if (Boolean.TRUE.equals(groupPartitioned)) {
-            return TOPIC_GROUPING_PATTERN.matcher(topicName).replaceAll("");
+    }
+
+    /**
+     * Processes whole batch in one pass, counters are increased once per distinct tag combination and batch is
+     * acknowledged with single call.
+     */
+    public void receivedBatch(Consumer<byte[]> consumer, Messages<byte[]> messages) {
+        consumer.acknowledgeAsync(messages);
+        var counts = new IdentityHashMap<Counter, long[]>();
+        for (var message : messages) {
+            var counter = process(message);
+            if (counter != null) {
+                counts.computeIfAbsent(counter, c -> new long[1])[0]++;
+            }
         }
-        return topicName;
+        counts.forEach((counter, count) -> counter.inc(count[0]));
     }
 
-    private Tag[] getTags(String topic, Optional<JSONObject> oJsonObject, Optional<SchemaRecord> oSchema, Optional<String> oUserBreakdown) {
-        var tags = new Tag[4];
-        tags[0] = new Tag("topic", topic);
-        tags[1] = new Tag("contentType", oJsonObject.map(jo -> "json").orElse(UNKNOWN));
-        tags[2] = new Tag("jsonSchema", oSchema.map(schema -> schema.name).orElse(UNKNOWN));
-        tags[3] = new Tag("jsonPathBreakdown", oUserBreakdown.orElse(UNKNOWN));
+    /**
+     * Returns counter of message, or null for duplicate which is excluded from counting and processing.
+     */
+    private Counter process(Message<byte[]> message) {
+        var startNanos = System.nanoTime();
+        var messageTopic = Objects.requireNonNullElse(getTopicName(message), UNKNOWN);
+        var messageValue = message.getValue();
+        if (duplicateDetector.isEnabled() && duplicateDetector.isDuplicate(messageTopic, message, messageValue, startNanos)
+                && duplicateDetector.isExcluded()) {
+            return null;
+        }
 
-        log.debugf("tags: %s", tags);
-        return tags;
+        // only payloads looking like json object are parsed, sniffing does not throw for binary payloads
+        var contentType = contentSniffer.sniff(message, messageValue);
+        // every message is counted, only sampled json messages are parsed and validated, json path breakdowns of the
+        // others are read from payload bytes
+        var sampled = contentType != ContentType.JSON_OBJECT || validationSampler.sample(messageTopic);
+        var oJsonObject = contentType == ContentType.JSON_OBJECT && sampled
+                ? facadeSchema.createJsonObject(messageTopic, messageValue, messageCharset)
+                : Optional.<JSONObject>empty();
+        if (contentType == ContentType.JSON_OBJECT && sampled && oJsonObject.isEmpty()) {
+            contentType = ContentType.INVALID_JSON;
+        }
+        var parsedNanos = System.nanoTime();
+        var validationResult = sampled
+                ? oJsonObject.map(jsonObject -> facadeSchema.validate(messageValue, jsonObject)).orElse(ValidationResult.NOT_VALIDATED)
+                : ValidationResult.NOT_VALIDATED;
+        if (validationResult.validated) {
+            validationSampler.validated(messageTopic, validationResult.isRejected());
+        }
+        if (validationResult.isRejected()) {
+            facadeSchema.reject(messageTopic, String.valueOf(message.getMessageId()), message.getPublishTime(), messageValue, validationResult);
+        }
+        recordValidity(messageTopic, contentType == ContentType.JSON_OBJECT, validationResult);
+        var schemaNanos = System.nanoTime();
+        var userBreakdowns = contentType == ContentType.JSON_OBJECT
+                ? jsonPathBreakdowns.extract(messageTopic, oJsonObject, messageValue)
+                : jsonPathBreakdowns.getUnknownValues();
+        var breakdownNanos = System.nanoTime();
+
+        stageLatencies.forTopic(messageTopic).record(
+                message.getEventTime() > 0 ? message.getEventTime() : message.getPublishTime(),
+                startNanos, parsedNanos, schemaNanos, breakdownNanos);
+
+        return messageCounters.counter(
+                messageTopic,
+                contentType.tagValue,
+                validationResult.oSchemaRecord.map(schema -> schema.name).orElse(UNKNOWN),
+                sampled,
+                userBreakdowns);
     }
 
-    private Optional<String> findJsonPathBreakdown(String json) {
-        if (oUserBreakdownJsonPath.isPresent()) {
-            try {
-                return Optional.ofNullable(JsonPath.parse(json).read(oUserBreakdownJsonPath.get(), String.class));
-            } catch (Exception e) {
-                log.warnf(e, "Cannot read jsonPath: %s in json: %s", oUserBreakdownJsonPath.get(), oneLiner(json));
-            }
+    private void recordValidity(String topic, boolean json, ValidationResult validationResult) {
+        if (!validityWindows.isEnabled()) {
+            return;
+        }
+        if (!json) {
+            validityWindows.record(topic, UNKNOWN, ValidityWindows.Outcome.NOT_JSON);
+        } else if (!validationResult.validated) {
+            validityWindows.record(topic, UNKNOWN, ValidityWindows.Outcome.NOT_VALIDATED);
+        } else if (validationResult.isRejected()) {
+            var closestSchema = validationResult.closestSchemaRecord == null ? UNKNOWN : validationResult.closestSchemaRecord.name;
+            validityWindows.record(topic, closestSchema, ValidityWindows.Outcome.INVALID);
+        } else {
+            validityWindows.record(topic, validationResult.oSchemaRecord.get().name, ValidityWindows.Outcome.VALID);
         }
-        return Optional.empty();
     }
 
-    private String oneLiner(String multiLine) {
-        if (multiLine == null) {
+    private String getTopicName(Message<byte[]> message) {
+        if (message == null || message.getTopicName() == null) {
             return null;
         }
-        return multiLine
-                .replaceAll("\n", " ")
-                .replaceAll("  ", " ")
-                .replaceAll("  ", " ")
-                .replaceAll("  ", " ")
-                .replaceAll("  ", " ");
+        var topicName = message.getTopicName();
+        if (Boolean.TRUE.equals(groupPartitioned)) {
+            var groupedTopicName = groupedTopicNames.get(topicName);
+            if (groupedTopicName == null) {
+                groupedTopicName = groupedTopicNames.computeIfAbsent(topicName, t -> TOPIC_GROUPING_PATTERN.matcher(t).replaceAll(""));
+            }
+            return groupedTopicName;
+        }
+        return topicName;
     }
 }
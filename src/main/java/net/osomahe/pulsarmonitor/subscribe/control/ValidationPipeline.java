@@ -0,0 +1,216 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import net.osomahe.pulsarmonitor.subscribe.entity.QueuedMessage;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Timer;
+import org.jboss.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Bounded queue between Pulsar listener threads and validation workers.
+ * <p>
+ * When queue reaches high-water mark all known consumers are paused, they are resumed once workers drain the queue
+ * below low-water mark. Message which does not fit into full queue is rejected and processed on the caller thread.
+ * <p>
+ * Queued messages are already acknowledged, on shutdown workers process what is left in the queue within drain
+ * timeout and messages submitted meanwhile are processed on the caller thread.
+ */
+@ApplicationScoped
+public class ValidationPipeline {
+
+    @Inject
+    Logger log;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Inject
+    TopicsListener topicsListener;
+
+    @ConfigProperty(name = "monitor.pipeline.enabled")
+    Boolean enabled;
+
+    @ConfigProperty(name = "monitor.pipeline.queue-capacity")
+    Integer queueCapacity;
+
+    @ConfigProperty(name = "monitor.pipeline.workers")
+    Integer workers;
+
+    @ConfigProperty(name = "monitor.pipeline.high-water-mark")
+    Double highWaterMark;
+
+    @ConfigProperty(name = "monitor.pipeline.low-water-mark")
+    Double lowWaterMark;
+
+    @ConfigProperty(name = "monitor.pipeline.drain-timeout-ms")
+    Long drainTimeoutMs;
+
+    private final Set<Consumer<byte[]>> consumers = ConcurrentHashMap.newKeySet();
+
+    private BlockingQueue<QueuedMessage> queue;
+
+    private ExecutorService executor;
+
+    private int highWaterSize;
+
+    private int lowWaterSize;
+
+    private volatile boolean paused;
+
+    private volatile boolean running;
+
+    private Timer waitTimer;
+
+    private Counter rejectedCounter;
+
+    private Counter pausedCounter;
+
+    @PostConstruct
+    void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        highWaterSize = Math.max(1, (int) (queueCapacity * highWaterMark));
+        lowWaterSize = Math.min(highWaterSize - 1, (int) (queueCapacity * lowWaterMark));
+        metricRegistry.gauge(Metadata.builder()
+                .withName("pipelineQueueDepth")
+                .withDescription("Number of messages waiting for validation")
+                .build(), queue::size);
+        waitTimer = metricRegistry.timer(Metadata.builder()
+                .withName("pipelineQueueWait")
+                .withDescription("Time messages spent in queue before validation")
+                .build());
+        rejectedCounter = metricRegistry.counter(Metadata.builder()
+                .withName("pipelineRejected")
+                .withDescription("Messages which did not fit into full queue and were processed on listener thread")
+                .build());
+        pausedCounter = metricRegistry.counter(Metadata.builder()
+                .withName("pipelinePaused")
+                .withDescription("Number of times consumers were paused because of full queue")
+                .build());
+
+        running = true;
+        var threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            var thread = new Thread(runnable, "validation-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::drain);
+        }
+        log.infof("Validation pipeline started with %d workers and queue capacity %d", workers, queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    public void submit(Consumer<byte[]> consumer, Message<byte[]> message) {
+        if (!running) {
+            topicsListener.processAndCount(message);
+            return;
+        }
+        consumers.add(consumer);
+        if (!queue.offer(new QueuedMessage(message, System.nanoTime()))) {
+            rejectedCounter.inc();
+            pauseConsumers();
+            topicsListener.processAndCount(message);
+            return;
+        }
+        if (!paused && queue.size() >= highWaterSize) {
+            pauseConsumers();
+        }
+    }
+
+    private void drain() {
+        // after close workers continue until the queue is empty
+        while (running || !queue.isEmpty()) {
+            try {
+                var queuedMessage = queue.poll(1, TimeUnit.SECONDS);
+                if (queuedMessage != null) {
+                    waitTimer.update(Duration.ofNanos(System.nanoTime() - queuedMessage.enqueuedNanos));
+                    topicsListener.processAndCount(queuedMessage.message);
+                }
+                // checked also after timeout, queue could be drained before consumers were paused
+                if (paused && queue.size() <= lowWaterSize) {
+                    resumeConsumers();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.errorf(e, "Cannot process queued message");
+            }
+        }
+    }
+
+    private synchronized void pauseConsumers() {
+        if (paused) {
+            return;
+        }
+        paused = true;
+        pausedCounter.inc();
+        log.debugf("Pausing %d consumers, queue depth: %d", consumers.size(), queue.size());
+        consumers.forEach(Consumer::pause);
+        // workers could drain the queue before paused was set, then no worker would resume consumers
+        if (queue.size() <= lowWaterSize) {
+            resumeConsumers();
+        }
+    }
+
+    private synchronized void resumeConsumers() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        log.debugf("Resuming %d consumers, queue depth: %d", consumers.size(), queue.size());
+        consumers.forEach(Consumer::resume);
+    }
+
+    /**
+     * Lets workers process messages left in the queue, called after consumers are closed. Messages which are not
+     * processed within drain timeout are not counted.
+     */
+    public void close() {
+        if (executor == null) {
+            return;
+        }
+        running = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(drainTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warnf("Validation queue was not drained in %d ms, %d queued messages are not counted", drainTimeoutMs, queue.size());
+                executor.shutdownNow();
+                return;
+            }
+            // message submitted just before close could be queued after workers finished
+            QueuedMessage queuedMessage;
+            while ((queuedMessage = queue.poll()) != null) {
+                topicsListener.processAndCount(queuedMessage.message);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
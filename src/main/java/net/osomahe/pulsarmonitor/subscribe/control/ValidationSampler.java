@@ -0,0 +1,206 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.jboss.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+
+/**
+ * Decides which json messages are validated against schemas, every message is still counted. Sample rate is configured
+ * per topic pattern, topics without matching pattern validate every message.
+ * <p>
+ * In adaptive mode topic validates every message for a while when invalid ratio of its sampled messages rises above
+ * its usual level, or when new tag combination (e.g. new breakdown value) appears on the topic.
+ */
+@ApplicationScoped
+public class ValidationSampler {
+
+    public static final String SAMPLED_TAG_NAME = "sampled";
+
+    // invalid ratio is evaluated after this number of validated messages
+    static final int RATIO_WINDOW = 100;
+
+    // weight of the last window in usual invalid ratio of topic
+    private static final double BASELINE_WEIGHT = 0.2;
+
+    private static final Metadata SAMPLE_RATE_METADATA = Metadata.builder()
+            .withName("validationSampleRate")
+            .withDescription("Current ratio of json messages validated against schemas")
+            .build();
+
+    @Inject
+    Logger log;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @ConfigProperty(name = "monitor.sampling.enabled")
+    Boolean enabled;
+
+    @ConfigProperty(name = "monitor.sampling.rates")
+    Optional<List<String>> oRates;
+
+    @ConfigProperty(name = "monitor.sampling.adaptive")
+    Boolean adaptive;
+
+    @ConfigProperty(name = "monitor.sampling.invalid-ratio-rise")
+    Double invalidRatioRise;
+
+    @ConfigProperty(name = "monitor.sampling.boost-seconds")
+    Long boostSeconds;
+
+    private final List<PatternRate> patternRates = new ArrayList<>();
+
+    private final Map<String, TopicSampler> topicSamplers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        for (var rate : oRates.orElse(List.of())) {
+            var separator = rate.lastIndexOf('=');
+            if (separator < 1) {
+                throw new IllegalStateException("Sample rate %s has to be in format topicPattern=rate".formatted(rate));
+            }
+            var sampleRate = Double.parseDouble(rate.substring(separator + 1).strip());
+            if (sampleRate <= 0 || sampleRate > 1) {
+                throw new IllegalStateException("Sample rate %s has to be greater than 0 and at most 1".formatted(rate));
+            }
+            patternRates.add(new PatternRate(Pattern.compile(rate.substring(0, separator).strip()), sampleRate));
+        }
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * Returns whether json message of topic should be validated.
+     */
+    public boolean sample(String topic) {
+        if (!isEnabled()) {
+            return true;
+        }
+        var rate = findTopicSampler(topic).currentRate();
+        return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * Result of validated message, invalid ratio of topic is evaluated after every {@link #RATIO_WINDOW} messages.
+     */
+    public void validated(String topic, boolean rejected) {
+        if (isEnabled() && Boolean.TRUE.equals(adaptive)) {
+            findTopicSampler(topic).validated(rejected);
+        }
+    }
+
+    /**
+     * Called by {@link MessageCounters} when topic gets new tag combination.
+     */
+    public void newTagCombination(String topic) {
+        if (isEnabled() && Boolean.TRUE.equals(adaptive)) {
+            findTopicSampler(topic).boost("new tag combination");
+        }
+    }
+
+    private TopicSampler findTopicSampler(String topic) {
+        var topicSampler = topicSamplers.get(topic);
+        if (topicSampler == null) {
+            topicSampler = topicSamplers.computeIfAbsent(topic, this::createTopicSampler);
+        }
+        return topicSampler;
+    }
+
+    private TopicSampler createTopicSampler(String topic) {
+        var rate = patternRates.stream()
+                .filter(patternRate -> patternRate.pattern.matcher(topic).matches())
+                .mapToDouble(patternRate -> patternRate.rate)
+                .findFirst()
+                .orElse(1);
+        log.infof("Json messages of topic %s are validated with sample rate %s", topic, rate);
+        var topicSampler = new TopicSampler(topic, rate);
+        metricRegistry.gauge(SAMPLE_RATE_METADATA, topicSampler::currentRate, new Tag("topic", topic));
+        return topicSampler;
+    }
+
+    private static final class PatternRate {
+
+        private final Pattern pattern;
+
+        private final double rate;
+
+        private PatternRate(Pattern pattern, double rate) {
+            this.pattern = pattern;
+            this.rate = rate;
+        }
+    }
+
+    private final class TopicSampler {
+
+        private final String topic;
+
+        private final double rate;
+
+        private volatile long boostedUntilNanos;
+
+        private int windowValidated;
+
+        private int windowRejected;
+
+        private double baselineRatio = -1;
+
+        private TopicSampler(String topic, double rate) {
+            this.topic = topic;
+            this.rate = rate;
+            this.boostedUntilNanos = System.nanoTime();
+        }
+
+        private double currentRate() {
+            return rate < 1 && System.nanoTime() - boostedUntilNanos < 0 ? 1 : rate;
+        }
+
+        private synchronized void validated(boolean rejected) {
+            windowValidated++;
+            if (rejected) {
+                windowRejected++;
+            }
+            if (windowValidated < RATIO_WINDOW) {
+                return;
+            }
+            var ratio = (double) windowRejected / windowValidated;
+            windowValidated = 0;
+            windowRejected = 0;
+            if (baselineRatio < 0) {
+                baselineRatio = ratio;
+                return;
+            }
+            if (ratio > baselineRatio + invalidRatioRise) {
+                boost(String.format(Locale.ROOT, "invalid ratio %.3f rose above usual %.3f", ratio, baselineRatio));
+            }
+            baselineRatio = baselineRatio * (1 - BASELINE_WEIGHT) + ratio * BASELINE_WEIGHT;
+        }
+
+        private void boost(String reason) {
+            if (rate >= 1) {
+                return;
+            }
+            if (System.nanoTime() - boostedUntilNanos >= 0) {
+                log.infof("Validating every json message of topic %s for %d s, %s", topic, boostSeconds, reason);
+            }
+            boostedUntilNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(boostSeconds);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import net.osomahe.pulsarmonitor.subscribe.entity.TopicValidity;
+import net.osomahe.pulsarmonitor.subscribe.entity.ValidityWindow;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.jboss.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Sliding windows (1m, 5m, 15m) of valid, invalid, not json and not validated messages per topic and schema.
+ * <p>
+ * Listener threads only increment striped {@link LongAdder} totals. Every {@link #TICK_SECONDS} background thread
+ * stores totals into ring of snapshots, window counts are differences between the last snapshot and snapshot from
+ * window length ago. Results are published as immutable {@link TopicValidity} read by gauges and REST resource.
+ * <p>
+ * Rate and invalid ratio of the last minute are compared with exponentially weighted mean and deviation of the topic,
+ * deviation by more than configured number of sigmas is flagged as anomaly.
+ */
+@ApplicationScoped
+public class ValidityWindows {
+
+    public enum Outcome {
+        VALID, INVALID, NOT_JSON, NOT_VALIDATED
+    }
+
+    static final int TICK_SECONDS = 10;
+
+    private static final String[] WINDOW_NAMES = {"1m", "5m", "15m"};
+
+    private static final int[] WINDOW_TICKS = {6, 30, 90};
+
+    private static final int RING_SIZE = 91;
+
+    // anomalies are not flagged until baseline has this number of ticks
+    private static final int WARMUP_TICKS = 30;
+
+    // smallest deviations used for anomalies, so topic with perfectly stable baseline is not flagged for tiny change
+    private static final double MIN_RATE_DEVIATION_SHARE = 0.1;
+
+    private static final double MIN_RATE_DEVIATION = 0.1;
+
+    private static final double MIN_RATIO_DEVIATION = 0.01;
+
+    private static final Metadata RATE_METADATA = Metadata.builder()
+            .withName("validityWindowRate")
+            .withDescription("Messages per second in sliding window by validation result")
+            .build();
+
+    private static final Metadata INVALID_RATIO_METADATA = Metadata.builder()
+            .withName("validityWindowInvalidRatio")
+            .withDescription("Invalid messages divided by validated messages in sliding window")
+            .build();
+
+    private static final Metadata ANOMALY_METADATA = Metadata.builder()
+            .withName("validityAnomaly")
+            .withDescription("1 when rate or invalid ratio of the last minute deviates from baseline of the topic")
+            .build();
+
+    @Inject
+    Logger log;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @ConfigProperty(name = "monitor.validity-windows.enabled")
+    Boolean enabled;
+
+    @ConfigProperty(name = "monitor.validity-windows.anomaly-sigma")
+    Double anomalySigma;
+
+    @ConfigProperty(name = "monitor.validity-windows.baseline-minutes")
+    Long baselineMinutes;
+
+    private final Map<String, TopicWindows> topics = new ConcurrentHashMap<>();
+
+    private volatile long tick;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "validity-windows");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::tick, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * Invalid message is recorded under its closest schema, not json and not validated messages under unknown.
+     */
+    public void record(String topic, String schema, Outcome outcome) {
+        if (!isEnabled()) {
+            return;
+        }
+        var topicWindows = topics.get(topic);
+        if (topicWindows == null) {
+            topicWindows = topics.computeIfAbsent(topic, this::createTopicWindows);
+        }
+        topicWindows.schemaWindows(schema).totals[outcome.ordinal()].increment();
+    }
+
+    /**
+     * Returns windows of given topic or of all topics ordered by topic name.
+     */
+    public List<TopicValidity> findValidities(Optional<String> oTopic) {
+        return topics.values().stream()
+                .filter(topicWindows -> oTopic.isEmpty() || oTopic.get().equals(topicWindows.topic))
+                .map(topicWindows -> topicWindows.validity)
+                .sorted(Comparator.comparing(validity -> validity.topic))
+                .toList();
+    }
+
+    private TopicWindows createTopicWindows(String topic) {
+        var topicWindows = new TopicWindows(topic, tick);
+        for (int w = 0; w < WINDOW_NAMES.length; w++) {
+            var windowName = WINDOW_NAMES[w];
+            var windowTag = new Tag("window", windowName);
+            for (var outcome : Outcome.values()) {
+                metricRegistry.gauge(RATE_METADATA, () -> topicWindows.rate(windowName, outcome),
+                        new Tag("topic", topic), windowTag, new Tag("result", tagValue(outcome)));
+            }
+            metricRegistry.gauge(INVALID_RATIO_METADATA, () -> topicWindows.validity.windows.get(windowName).invalidRatio,
+                    new Tag("topic", topic), windowTag);
+        }
+        metricRegistry.gauge(ANOMALY_METADATA, () -> topicWindows.validity.rateAnomaly ? 1 : 0,
+                new Tag("topic", topic), new Tag("signal", "rate"));
+        metricRegistry.gauge(ANOMALY_METADATA, () -> topicWindows.validity.invalidRatioAnomaly ? 1 : 0,
+                new Tag("topic", topic), new Tag("signal", "invalidRatio"));
+        return topicWindows;
+    }
+
+    private static String tagValue(Outcome outcome) {
+        return switch (outcome) {
+            case VALID -> "valid";
+            case INVALID -> "invalid";
+            case NOT_JSON -> "notJson";
+            case NOT_VALIDATED -> "notValidated";
+        };
+    }
+
+    private void tick() {
+        try {
+            var currentTick = tick + 1;
+            var alpha = (double) TICK_SECONDS / TimeUnit.MINUTES.toSeconds(baselineMinutes);
+            topics.values().forEach(topicWindows -> topicWindows.update(currentTick, alpha));
+            tick = currentTick;
+        } catch (Exception e) {
+            log.errorf(e, "Cannot update validity windows");
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static final class SchemaWindows {
+
+        private final LongAdder[] totals = new LongAdder[Outcome.values().length];
+
+        private final long[][] ring = new long[RING_SIZE][Outcome.values().length];
+
+        private final long createdTick;
+
+        private SchemaWindows(long createdTick) {
+            this.createdTick = createdTick;
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] = new LongAdder();
+            }
+        }
+
+        private void snapshot(long currentTick) {
+            var slot = ring[(int) (currentTick % RING_SIZE)];
+            for (int i = 0; i < totals.length; i++) {
+                slot[i] = totals[i].sum();
+            }
+        }
+
+        /**
+         * Counts of outcomes in the last windowTicks, counts since creation when it is younger.
+         */
+        private long[] counts(long currentTick, int windowTicks) {
+            var last = ring[(int) (currentTick % RING_SIZE)];
+            var counts = last.clone();
+            if (currentTick - windowTicks > createdTick) {
+                var first = ring[(int) ((currentTick - windowTicks) % RING_SIZE)];
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] -= first[i];
+                }
+            }
+            return counts;
+        }
+
+        private double seconds(long currentTick, int windowTicks) {
+            return Math.min(windowTicks, currentTick - createdTick) * (double) TICK_SECONDS;
+        }
+    }
+
+    private final class TopicWindows {
+
+        private final String topic;
+
+        private final long createdTick;
+
+        private final Map<String, SchemaWindows> schemas = new ConcurrentHashMap<>();
+
+        private volatile TopicValidity validity;
+
+        private long baselineTicks;
+
+        private double rateMean;
+
+        private double rateVariance;
+
+        private double ratioMean;
+
+        private double ratioVariance;
+
+        private TopicWindows(String topic, long createdTick) {
+            this.topic = topic;
+            this.createdTick = createdTick;
+            var windows = new LinkedHashMap<String, ValidityWindow>();
+            for (var windowName : WINDOW_NAMES) {
+                windows.put(windowName, ValidityWindow.EMPTY);
+            }
+            this.validity = new TopicValidity(topic, windows, Map.of(), 0, 0, false, false);
+        }
+
+        private SchemaWindows schemaWindows(String schema) {
+            var schemaWindows = schemas.get(schema);
+            if (schemaWindows == null) {
+                schemaWindows = schemas.computeIfAbsent(schema, s -> new SchemaWindows(tick));
+            }
+            return schemaWindows;
+        }
+
+        private double rate(String windowName, Outcome outcome) {
+            var window = validity.windows.get(windowName);
+            if (window.seconds == 0) {
+                return 0;
+            }
+            return switch (outcome) {
+                case VALID -> window.valid / window.seconds;
+                case INVALID -> window.invalid / window.seconds;
+                case NOT_JSON -> window.notJson / window.seconds;
+                case NOT_VALIDATED -> window.notValidated / window.seconds;
+            };
+        }
+
+        private void update(long currentTick, double alpha) {
+            var windows = new LinkedHashMap<String, ValidityWindow>();
+            var schemaValidities = new TreeMap<String, Map<String, ValidityWindow>>();
+            var topicCounts = new long[WINDOW_NAMES.length][Outcome.values().length];
+            schemas.forEach((schema, schemaWindows) -> {
+                schemaWindows.snapshot(currentTick);
+                var schemaWindowsByName = new LinkedHashMap<String, ValidityWindow>();
+                for (int w = 0; w < WINDOW_NAMES.length; w++) {
+                    var counts = schemaWindows.counts(currentTick, WINDOW_TICKS[w]);
+                    for (int i = 0; i < counts.length; i++) {
+                        topicCounts[w][i] += counts[i];
+                    }
+                    schemaWindowsByName.put(WINDOW_NAMES[w], toWindow(counts, schemaWindows.seconds(currentTick, WINDOW_TICKS[w])));
+                }
+                schemaValidities.put(schema, schemaWindowsByName);
+            });
+            for (int w = 0; w < WINDOW_NAMES.length; w++) {
+                var seconds = Math.min(WINDOW_TICKS[w], currentTick - createdTick) * (double) TICK_SECONDS;
+                windows.put(WINDOW_NAMES[w], toWindow(topicCounts[w], seconds));
+            }
+
+            var lastMinute = windows.get(WINDOW_NAMES[0]);
+            var warmedUp = baselineTicks >= WARMUP_TICKS;
+            var rateDeviation = Math.max(Math.sqrt(rateVariance), Math.max(rateMean * MIN_RATE_DEVIATION_SHARE, MIN_RATE_DEVIATION));
+            var rateAnomaly = warmedUp && Math.abs(lastMinute.ratePerSecond - rateMean) > anomalySigma * rateDeviation;
+            var validated = lastMinute.valid + lastMinute.invalid > 0;
+            var ratioDeviation = Math.max(Math.sqrt(ratioVariance), MIN_RATIO_DEVIATION);
+            var invalidRatioAnomaly = warmedUp && validated && lastMinute.invalidRatio - ratioMean > anomalySigma * ratioDeviation;
+            if (rateAnomaly != validity.rateAnomaly || invalidRatioAnomaly != validity.invalidRatioAnomaly) {
+                log.info(String.format(Locale.ROOT, "Topic %s rate %.2f/s (baseline %.2f/s) anomaly: %s, invalid ratio %.3f (baseline %.3f) anomaly: %s",
+                        topic, lastMinute.ratePerSecond, rateMean, rateAnomaly, lastMinute.invalidRatio, ratioMean, invalidRatioAnomaly));
+            }
+
+            // exponentially weighted mean and variance
+            if (currentTick - createdTick >= WINDOW_TICKS[0]) {
+                if (baselineTicks == 0) {
+                    // the first full minute seeds the means, difference from zero would inflate variance
+                    rateMean = lastMinute.ratePerSecond;
+                    ratioMean = lastMinute.invalidRatio;
+                } else {
+                    var rateDiff = lastMinute.ratePerSecond - rateMean;
+                    rateMean += alpha * rateDiff;
+                    rateVariance = (1 - alpha) * (rateVariance + alpha * rateDiff * rateDiff);
+                    if (validated) {
+                        var ratioDiff = lastMinute.invalidRatio - ratioMean;
+                        ratioMean += alpha * ratioDiff;
+                        ratioVariance = (1 - alpha) * (ratioVariance + alpha * ratioDiff * ratioDiff);
+                    }
+                }
+                baselineTicks++;
+            }
+            validity = new TopicValidity(topic, windows, schemaValidities, rateMean, ratioMean, rateAnomaly, invalidRatioAnomaly);
+        }
+
+        private ValidityWindow toWindow(long[] counts, double seconds) {
+            return new ValidityWindow(counts[Outcome.VALID.ordinal()], counts[Outcome.INVALID.ordinal()],
+                    counts[Outcome.NOT_JSON.ordinal()], counts[Outcome.NOT_VALIDATED.ordinal()], seconds);
+        }
+    }
+}
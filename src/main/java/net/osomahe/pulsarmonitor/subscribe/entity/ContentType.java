@@ -0,0 +1,25 @@
+package net.osomahe.pulsarmonitor.subscribe.entity;
+
+/**
+ * Kind of message payload reported in {@code contentType} tag of {@code pulsarMessage} metric.
+ */
+public enum ContentType {
+
+    JSON_OBJECT("json-object"),
+    JSON_ARRAY("json-array"),
+    /**
+     * Payload starts as json object but cannot be parsed.
+     */
+    INVALID_JSON("invalid-json"),
+    AVRO("avro"),
+    PROTOBUF("protobuf"),
+    TEXT("text"),
+    BINARY("binary"),
+    EMPTY("empty");
+
+    public final String tagValue;
+
+    ContentType(String tagValue) {
+        this.tagValue = tagValue;
+    }
+}
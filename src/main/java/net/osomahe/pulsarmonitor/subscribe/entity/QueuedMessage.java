@@ -0,0 +1,16 @@
+package net.osomahe.pulsarmonitor.subscribe.entity;
+
+import org.apache.pulsar.client.api.Message;
+
+
+public class QueuedMessage {
+
+    public final Message<byte[]> message;
+
+    public final long enqueuedNanos;
+
+    public QueuedMessage(Message<byte[]> message, long enqueuedNanos) {
+        this.message = message;
+        this.enqueuedNanos = enqueuedNanos;
+    }
+}
@@ -1,8 +1,11 @@
 package net.osomahe.pulsarmonitor.subscribe.entity;
 
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
 import java.util.List;
 
 
+@RegisterForReflection
 public class ReaderInfo {
 
     public final List<ReaderMessage> messages;
@@ -1,10 +1,13 @@
 package net.osomahe.pulsarmonitor.subscribe.entity;
 
+import io.quarkus.runtime.annotations.RegisterForReflection;
 import org.apache.pulsar.client.api.Message;
 
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.StringJoiner;
 
+@RegisterForReflection
 public class ReaderMessage implements Comparable<ReaderMessage> {
     public final String messageId;
     public final String topic;
@@ -14,12 +17,16 @@ public class ReaderMessage implements Comparable<ReaderMessage> {
     public final String payload;
 
     public ReaderMessage(Message<byte[]> message) {
+        this(message, StandardCharsets.UTF_8);
+    }
+
+    public ReaderMessage(Message<byte[]> message, Charset charset) {
         messageId = message.getMessageId().toString();
         publishTime = message.getPublishTime();
         producer = message.getProducerName();
         topic = message.getTopicName();
         key = message.getKey();
-        payload = new String(message.getValue(), StandardCharsets.UTF_8);
+        payload = new String(message.getValue(), charset);
     }
 
 
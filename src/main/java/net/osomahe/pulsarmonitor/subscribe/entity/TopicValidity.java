@@ -0,0 +1,39 @@
+package net.osomahe.pulsarmonitor.subscribe.entity;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.util.Map;
+
+
+/**
+ * Sliding windows of one topic, per window name (1m, 5m, 15m) for the whole topic and for every schema. Invalid
+ * messages are counted under their closest schema. Anomaly flags compare the last minute with baseline of the topic.
+ */
+@RegisterForReflection
+public class TopicValidity {
+
+    public final String topic;
+
+    public final Map<String, ValidityWindow> windows;
+
+    public final Map<String, Map<String, ValidityWindow>> schemas;
+
+    public final double baselineRate;
+
+    public final double baselineInvalidRatio;
+
+    public final boolean rateAnomaly;
+
+    public final boolean invalidRatioAnomaly;
+
+    public TopicValidity(String topic, Map<String, ValidityWindow> windows, Map<String, Map<String, ValidityWindow>> schemas,
+                         double baselineRate, double baselineInvalidRatio, boolean rateAnomaly, boolean invalidRatioAnomaly) {
+        this.topic = topic;
+        this.windows = windows;
+        this.schemas = schemas;
+        this.baselineRate = baselineRate;
+        this.baselineInvalidRatio = baselineInvalidRatio;
+        this.rateAnomaly = rateAnomaly;
+        this.invalidRatioAnomaly = invalidRatioAnomaly;
+    }
+}
@@ -0,0 +1,43 @@
+package net.osomahe.pulsarmonitor.subscribe.entity;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+
+/**
+ * Numbers of messages in sliding window, rate is number of all messages per second.
+ */
+@RegisterForReflection
+public class ValidityWindow {
+
+    public static final ValidityWindow EMPTY = new ValidityWindow(0, 0, 0, 0, 0);
+
+    public final long valid;
+
+    public final long invalid;
+
+    public final long notJson;
+
+    public final long notValidated;
+
+    /**
+     * Length of window, shorter than window name after startup or when topic appeared recently.
+     */
+    public final double seconds;
+
+    public final double ratePerSecond;
+
+    /**
+     * Invalid messages divided by validated messages, 0 when no message was validated.
+     */
+    public final double invalidRatio;
+
+    public ValidityWindow(long valid, long invalid, long notJson, long notValidated, double seconds) {
+        this.valid = valid;
+        this.invalid = invalid;
+        this.notJson = notJson;
+        this.notValidated = notValidated;
+        this.seconds = seconds;
+        this.ratePerSecond = seconds > 0 ? (valid + invalid + notJson + notValidated) / seconds : 0;
+        this.invalidRatio = valid + invalid > 0 ? (double) invalid / (valid + invalid) : 0;
+    }
+}
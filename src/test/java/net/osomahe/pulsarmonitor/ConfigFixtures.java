@@ -0,0 +1,98 @@
+package net.osomahe.pulsarmonitor;
+
+import io.smallrye.config.PropertiesConfigSource;
+import io.smallrye.config.SmallRyeConfig;
+import io.smallrye.config.SmallRyeConfigBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+
+/**
+ * Configures beans outside of CDI container from application.properties, so tests and benchmarks run with the same
+ * values as the application. Only properties given as overrides differ from the shipped configuration.
+ */
+public final class ConfigFixtures {
+
+    private static final int OVERRIDES_ORDINAL = 500;
+
+    private ConfigFixtures() {
+    }
+
+    /**
+     * Sets all {@link ConfigProperty} fields and injected {@link Logger} of the bean.
+     *
+     * @param bean      bean created by its constructor
+     * @param overrides properties which take precedence over application.properties
+     * @return the same bean
+     */
+    public static <T> T configure(T bean, Map<String, String> overrides) {
+        var config = createConfig(overrides);
+        for (Class<?> type = bean.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (var field : type.getDeclaredFields()) {
+                var property = field.getAnnotation(ConfigProperty.class);
+                if (property != null) {
+                    set(bean, field, value(config, property, field.getGenericType()));
+                } else if (field.isAnnotationPresent(Inject.class) && field.getType() == Logger.class) {
+                    set(bean, field, Logger.getLogger(type));
+                }
+            }
+        }
+        return bean;
+    }
+
+    public static <T> T configure(T bean) {
+        return configure(bean, Map.of());
+    }
+
+    private static SmallRyeConfig createConfig(Map<String, String> overrides) {
+        var properties = ConfigFixtures.class.getClassLoader().getResource("application.properties");
+        if (properties == null) {
+            throw new IllegalStateException("application.properties is not on classpath");
+        }
+        try {
+            return new SmallRyeConfigBuilder()
+                    .addDefaultInterceptors()
+                    .withSources(new PropertiesConfigSource(properties))
+                    .withSources(new PropertiesConfigSource(overrides, "overrides", OVERRIDES_ORDINAL))
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Object value(SmallRyeConfig config, ConfigProperty property, Type type) {
+        var name = property.name();
+        var defaultValue = property.defaultValue();
+        if (type instanceof ParameterizedType parameterized && parameterized.getRawType() == Optional.class) {
+            var argument = parameterized.getActualTypeArguments()[0];
+            if (argument instanceof ParameterizedType list && list.getRawType() == List.class) {
+                return config.getOptionalValues(name, (Class<?>) list.getActualTypeArguments()[0]).map(List::copyOf);
+            }
+            return config.getOptionalValue(name, (Class<?>) argument);
+        }
+        var optionalValue = config.getOptionalValue(name, (Class<?>) type);
+        if (optionalValue.isEmpty() && !ConfigProperty.UNCONFIGURED_VALUE.equals(defaultValue)) {
+            return config.getConverter((Class<?>) type).orElseThrow().convert(defaultValue);
+        }
+        return optionalValue.orElseThrow(() -> new IllegalStateException("Property " + name + " is not configured"));
+    }
+
+    private static void set(Object bean, Field field, Object value) {
+        try {
+            field.setAccessible(true);
+            field.set(bean, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot set " + field, e);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import io.smallrye.metrics.MetricRegistries;
+import net.osomahe.pulsarmonitor.ConfigFixtures;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class CounterCheckpointTest {
+
+    private static final String TOPIC = "persistent://public/default/orders";
+
+    private static final String CONTENT_TYPE = "json";
+
+    private static final String SCHEMA = "order";
+
+    @TempDir
+    Path tempDir;
+
+    private CounterCheckpoint checkpoint;
+
+    @AfterEach
+    void close() {
+        if (checkpoint != null) {
+            checkpoint.close();
+        }
+        MetricRegistries.dropAll();
+    }
+
+    @Test
+    void restoresCountsAfterRestart() {
+        var file = tempDir.resolve("counters");
+        start(file, Map.of());
+        count("created", 3);
+        count("paid", 2);
+        count("žluťoučký", 1);
+        restart(file, Map.of());
+
+        assertEquals(3, count("created", 0));
+        assertEquals(2, count("paid", 0));
+        assertEquals(1, count("žluťoučký", 0));
+    }
+
+    @Test
+    void continuesCountingAcrossRestarts() {
+        var file = tempDir.resolve("counters");
+        start(file, Map.of());
+        count("created", 3);
+        restart(file, Map.of());
+        count("created", 4);
+        count("paid", 1);
+        restart(file, Map.of());
+
+        assertEquals(7, count("created", 0));
+        assertEquals(1, count("paid", 0));
+    }
+
+    @Test
+    void dropsTruncatedTail() throws IOException {
+        var file = tempDir.resolve("counters");
+        start(file, Map.of());
+        count("created", 3);
+        count("paid", 2);
+        count("cancelled", 1);
+        stop();
+        // end of entries points into the last tag value as if the write of the entry was cut
+        writeInt(file, 12, lastValueOffset(file, "cancelled") + 2 + 4);
+
+        start(file, Map.of());
+        assertEquals(3, count("created", 0));
+        assertEquals(2, count("paid", 0));
+        assertEquals(0, count("cancelled", 0));
+
+        count("cancelled", 5);
+        restart(file, Map.of());
+        assertEquals(3, count("created", 0));
+        assertEquals(5, count("cancelled", 0));
+    }
+
+    @Test
+    void dropsEntryWithCorruptedLength() throws IOException {
+        var file = tempDir.resolve("counters");
+        start(file, Map.of());
+        count("created", 3);
+        count("paid", 2);
+        stop();
+        // length of the last tag value of the last entry is made negative
+        writeShort(file, lastValueOffset(file, "paid"), (short) -1);
+
+        start(file, Map.of());
+        assertEquals(3, count("created", 0));
+        assertEquals(0, count("paid", 0));
+    }
+
+    @Test
+    void foldsRestoredValuesAboveCardinalityLimit() {
+        var file = tempDir.resolve("counters");
+        start(file, Map.of());
+        count("created", 3);
+        count("paid", 2);
+        count("cancelled", 1);
+        var lowered = Map.of("monitor.breakdown-cardinality.max-values", "2");
+        restart(file, lowered);
+
+        assertEquals(3, count("created", 0));
+        assertEquals(2, count("paid", 0));
+        assertEquals(1, count(BreakdownCardinalityGuard.OTHER, 0));
+
+        count("unknown", 4);
+        restart(file, lowered);
+        assertEquals(3, count("created", 0));
+        assertEquals(2, count("paid", 0));
+        assertEquals(5, count(BreakdownCardinalityGuard.OTHER, 0));
+    }
+
+    @Test
+    void ignoresCheckpointOfOtherTags() {
+        var file = tempDir.resolve("counters");
+        start(file, Map.of());
+        count("created", 3);
+        // sampling adds tag sampled
+        var sampling = Map.of("monitor.sampling.enabled", "true");
+        restart(file, sampling);
+
+        assertEquals(0, count("created", 0));
+
+        count("created", 1);
+        restart(file, sampling);
+        assertEquals(1, count("created", 0));
+    }
+
+    @Test
+    void keepsPersistedCountersWhenFileIsFull() {
+        var file = tempDir.resolve("counters");
+        var smallFile = Map.of("monitor.counter-checkpoint.max-bytes", "256");
+        start(file, smallFile);
+        for (int i = 0; i < 20; i++) {
+            count("value-" + i, i + 1);
+        }
+        restart(file, smallFile);
+
+        var persisted = 0;
+        for (int i = 0; i < 20; i++) {
+            var count = count("value-" + i, 0);
+            if (count > 0) {
+                assertEquals(i + 1, count, "value-" + i);
+                persisted++;
+            }
+        }
+        assertTrue(persisted > 0 && persisted < 20, "persisted " + persisted);
+        assertEquals(1, count("value-0", 0));
+    }
+
+    @Test
+    void restoresAfterMaxBytesIsRaised() {
+        var file = tempDir.resolve("counters");
+        start(file, Map.of("monitor.counter-checkpoint.max-bytes", "1024"));
+        count("created", 3);
+        count("paid", 2);
+        restart(file, Map.of("monitor.counter-checkpoint.max-bytes", "8192"));
+
+        assertEquals(3, count("created", 0));
+        assertEquals(2, count("paid", 0));
+    }
+
+    @Test
+    void restoresEntriesInsideLoweredMaxBytes() throws IOException {
+        var file = tempDir.resolve("counters");
+        start(file, Map.of("monitor.counter-checkpoint.max-bytes", "8192"));
+        for (int i = 0; i < 20; i++) {
+            count("value-" + i, i + 1);
+        }
+        stop();
+        var dataEnd = readInt(file, 12);
+
+        var lowered = Map.of("monitor.counter-checkpoint.max-bytes", String.valueOf(dataEnd / 2));
+        start(file, lowered);
+        var restored = 0;
+        for (int i = 0; i < 20; i++) {
+            var count = count("value-" + i, 0);
+            if (count > 0) {
+                assertEquals(i + 1, count, "value-" + i);
+                restored++;
+            }
+        }
+        assertTrue(restored > 0 && restored < 20, "restored " + restored);
+    }
+
+    private long count(String type, long increment) {
+        var counter = checkpoint.messageCounters.counter(TOPIC, CONTENT_TYPE, SCHEMA, true, new String[]{type});
+        counter.inc(increment);
+        return counter.getCount();
+    }
+
+    private void restart(Path file, Map<String, String> overrides) {
+        stop();
+        start(file, overrides);
+    }
+
+    private void stop() {
+        checkpoint.close();
+        checkpoint = null;
+        MetricRegistries.dropAll();
+    }
+
+    private void start(Path file, Map<String, String> overrides) {
+        var config = new HashMap<>(overrides);
+        config.put("monitor.counter-checkpoint.file", file.toString());
+        var metricRegistry = MetricRegistries.get(MetricRegistry.Type.APPLICATION);
+
+        var jsonPathBreakdowns = ConfigFixtures.configure(new JsonPathBreakdowns(), config);
+        jsonPathBreakdowns.init();
+
+        var cardinalityGuard = ConfigFixtures.configure(new BreakdownCardinalityGuard(), config);
+        cardinalityGuard.metricRegistry = metricRegistry;
+        cardinalityGuard.jsonPathBreakdowns = jsonPathBreakdowns;
+
+        var validationSampler = ConfigFixtures.configure(new ValidationSampler(), config);
+        validationSampler.metricRegistry = metricRegistry;
+        validationSampler.init();
+
+        var messageCounters = ConfigFixtures.configure(new MessageCounters(), config);
+        messageCounters.metricRegistry = metricRegistry;
+        messageCounters.jsonPathBreakdowns = jsonPathBreakdowns;
+        messageCounters.cardinalityGuard = cardinalityGuard;
+        messageCounters.validationSampler = validationSampler;
+
+        checkpoint = ConfigFixtures.configure(new CounterCheckpoint(), config);
+        checkpoint.messageCounters = messageCounters;
+        checkpoint.restore();
+    }
+
+    private static int lastValueOffset(Path file, String value) throws IOException {
+        var bytes = Files.readAllBytes(file);
+        var valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        for (int offset = readInt(file, 12) - valueBytes.length - 2; offset >= 0; offset--) {
+            if (ByteBuffer.wrap(bytes, offset, 2).getShort() == valueBytes.length
+                    && Arrays.equals(bytes, offset + 2, offset + 2 + valueBytes.length, valueBytes, 0, valueBytes.length)) {
+                return offset;
+            }
+        }
+        throw new IllegalStateException("Value " + value + " is not in checkpoint file");
+    }
+
+    private static int readInt(Path file, int offset) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate(4);
+            channel.read(buffer, offset);
+            return buffer.flip().getInt();
+        }
+    }
+
+    private static void writeInt(Path file, int offset, int value) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(value).flip(), offset);
+        }
+    }
+
+    private static void writeShort(Path file, int offset, short value) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(2).putShort(value).flip(), offset);
+        }
+    }
+}
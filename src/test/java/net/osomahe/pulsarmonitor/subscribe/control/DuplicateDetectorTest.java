@@ -0,0 +1,134 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import io.smallrye.metrics.MetricRegistries;
+import net.osomahe.pulsarmonitor.ConfigFixtures;
+import org.apache.pulsar.client.api.Message;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class DuplicateDetectorTest {
+
+    private static final String TOPIC = "persistent://public/default/orders";
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(300);
+
+    @AfterEach
+    void close() {
+        MetricRegistries.dropAll();
+    }
+
+    @Test
+    void detectsDuplicateWithinWindow() {
+        var detector = createDetector(Map.of());
+
+        assertFalse(detector.isDuplicate(TOPIC, message("producer", 1), payload(1), 0));
+        assertFalse(detector.isDuplicate(TOPIC, message("producer", 2), payload(2), 1));
+        assertTrue(detector.isDuplicate(TOPIC, message("producer", 1), payload(1), WINDOW_NANOS - 1));
+    }
+
+    @Test
+    void detectsDuplicateAcrossOneRotation() {
+        var detector = createDetector(Map.of());
+
+        assertFalse(detector.isDuplicate(TOPIC, message("producer", 1), payload(1), 0));
+        // the first message after window rotates generations
+        assertTrue(detector.isDuplicate(TOPIC, message("producer", 1), payload(1), WINDOW_NANOS));
+        assertTrue(detector.isDuplicate(TOPIC, message("producer", 1), payload(1), 2 * WINDOW_NANOS - 1));
+    }
+
+    @Test
+    void forgetsMessageAfterTwoRotations() {
+        var detector = createDetector(Map.of());
+
+        assertFalse(detector.isDuplicate(TOPIC, message("producer", 1), payload(1), 0));
+        assertFalse(detector.isDuplicate(TOPIC, message("producer", 2), payload(2), WINDOW_NANOS));
+        assertFalse(detector.isDuplicate(TOPIC, message("producer", 1), payload(1), 2 * WINDOW_NANOS));
+    }
+
+    @Test
+    void distinguishesProducersAndTopics() {
+        var detector = createDetector(Map.of());
+
+        assertFalse(detector.isDuplicate(TOPIC, message("producer", 1), payload(1), 0));
+        assertFalse(detector.isDuplicate(TOPIC, message("other", 1), payload(1), 0));
+        assertFalse(detector.isDuplicate(TOPIC + "-other", message("producer", 1), payload(1), 0));
+    }
+
+    @Test
+    void identifiesMessageWithoutSequenceByPayload() {
+        var detector = createDetector(Map.of());
+
+        assertFalse(detector.isDuplicate(TOPIC, message(null, -1), payload(1), 0));
+        assertFalse(detector.isDuplicate(TOPIC, message(null, -1), payload(2), 0));
+        assertTrue(detector.isDuplicate(TOPIC, message(null, -1), payload(1), 0));
+    }
+
+    @Test
+    void keepsFalsePositiveRateAtExpectedMessages() {
+        assertFalsePositiveRate(100_000, 0.001);
+        assertFalsePositiveRate(10_000, 0.01);
+    }
+
+    private static void assertFalsePositiveRate(int expectedMessages, double falsePositiveRate) {
+        var detector = createDetector(Map.of(
+                "monitor.duplicates.expected-messages", String.valueOf(expectedMessages),
+                "monitor.duplicates.false-positive-rate", String.valueOf(falsePositiveRate)));
+
+        // previous generation holds expected number of messages, probes are inserted into current generation so its
+        // load goes around expected number of messages
+        var probes = expectedMessages / 5;
+        var sequenceId = 0L;
+        for (int i = 0; i < expectedMessages; i++) {
+            detector.isDuplicate(TOPIC, message("producer", sequenceId++), null, 0);
+        }
+        for (int i = 0; i < expectedMessages - probes / 2; i++) {
+            detector.isDuplicate(TOPIC, message("producer", sequenceId++), null, WINDOW_NANOS);
+        }
+        var falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (detector.isDuplicate(TOPIC, message("producer", sequenceId++), null, WINDOW_NANOS)) {
+                falsePositives++;
+            }
+        }
+
+        var measuredRate = (double) falsePositives / probes;
+        assertTrue(measuredRate <= falsePositiveRate,
+                "measured false positive rate %f of %d messages is above %f".formatted(measuredRate, expectedMessages, falsePositiveRate));
+    }
+
+    private static DuplicateDetector createDetector(Map<String, String> overrides) {
+        var config = new HashMap<>(overrides);
+        config.put("monitor.duplicates.enabled", "true");
+        var detector = ConfigFixtures.configure(new DuplicateDetector(), config);
+        detector.metricRegistry = MetricRegistries.get(MetricRegistry.Type.APPLICATION);
+        detector.init();
+        return detector;
+    }
+
+    private static byte[] payload(int id) {
+        return ("{\"id\": " + id + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Message<byte[]> message(String producerName, long sequenceId) {
+        return (Message<byte[]>) Proxy.newProxyInstance(Message.class.getClassLoader(), new Class<?>[]{Message.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getProducerName" -> producerName;
+                    case "getSequenceId" -> sequenceId;
+                    case "getTopicName" -> TOPIC;
+                    case "hasKey" -> false;
+                    default -> null;
+                });
+    }
+}
@@ -0,0 +1,217 @@
+package net.osomahe.pulsarmonitor.subscribe.control;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class JsonFieldScannerTest {
+
+    @Test
+    void readsTopLevelAndNestedFields() {
+        var values = scan("{\"type\": \"order\", \"customer\": {\"address\": {\"city\": \"Brno\"}}}", "type", "customer.address.city");
+
+        assertArrayEquals(new Object[]{"order", "Brno"}, values);
+    }
+
+    @Test
+    void skipsNotRequestedValuesOfAllKinds() {
+        var json = """
+                {
+                  "text": "a, b } ] \\" {",
+                  "array": [1, [2, {"type": "inner"}], "]"],
+                  "object": {"type": "nested", "list": [{}, []]},
+                  "number": -1.5e3,
+                  "empty": {},
+                  "type": "outer"
+                }
+                """;
+
+        assertArrayEquals(new Object[]{"outer"}, scan(json, "type"));
+    }
+
+    @Test
+    void matchesEscapedKeys() {
+        var values = scan("{\"a\\\"b\": 1, \"\\u0063ity\": \"Brno\", \"t\\u00e9st\": true}", "a\"b", "city", "tést");
+
+        assertArrayEquals(new Object[]{1, "Brno", true}, values);
+    }
+
+    @Test
+    void decodesEscapedAndUnicodeStrings() {
+        var values = scan("{\"escaped\": \"line\\nnext \\\"quoted\\\" \\u00e9\", \"raw\": \"žluťoučký\"}", "escaped", "raw");
+
+        assertArrayEquals(new Object[]{"line\nnext \"quoted\" é", "žluťoučký"}, values);
+    }
+
+    @Test
+    void decodesNumbersAndLiteralsAsOrgJson() {
+        var json = "{\"int\": 42, \"negative\": -7, \"long\": 12345678901, \"decimal\": 1.25, \"exponent\": 1e3,"
+                + " \"yes\": true, \"no\": false, \"nothing\": null}";
+        var paths = new String[]{"int", "negative", "long", "decimal", "exponent", "yes", "no", "nothing"};
+
+        var values = scan(json, paths);
+
+        assertArrayEquals(fromTree(json, paths), values);
+        assertEquals(JSONObject.NULL, values[7]);
+    }
+
+    @Test
+    void returnsObjectsAndArraysAsOrgJsonValues() {
+        var values = scan("{\"address\": {\"city\": \"Brno\"}, \"tags\": [\"a\", 1]}", "address", "tags");
+
+        assertInstanceOf(JSONObject.class, values[0]);
+        assertEquals("Brno", ((JSONObject) values[0]).getString("city"));
+        assertInstanceOf(JSONArray.class, values[1]);
+        assertEquals(List.of("a", 1), ((JSONArray) values[1]).toList());
+    }
+
+    @Test
+    void readsParentAndItsChild() {
+        var values = scan("{\"address\": {\"city\": \"Brno\", \"zip\": 60200}}", "address", "address.city");
+
+        assertEquals("Brno", ((JSONObject) values[0]).getString("city"));
+        assertEquals("Brno", values[1]);
+    }
+
+    @Test
+    void keepsFirstValueOfDuplicateKey() {
+        assertArrayEquals(new Object[]{"first"}, scan("{\"type\": \"first\", \"type\": \"second\"}", "type"));
+    }
+
+    @Test
+    void doesNotMatchFieldOnOtherLevel() {
+        var values = scan("{\"city\": \"top\", \"address\": {\"type\": \"home\"}}", "address.city", "type");
+
+        assertArrayEquals(new Object[]{null, null}, values);
+    }
+
+    @Test
+    void ignoresPathThroughValueWhichIsNotObject() {
+        var values = scan("{\"address\": \"Brno\", \"items\": [{\"city\": \"x\"}]}", "address.city", "items.city");
+
+        assertArrayEquals(new Object[]{null, null}, values);
+    }
+
+    @Test
+    void stopsWhenAllFieldsAreFound() {
+        var values = new Object[1];
+
+        assertTrue(scanner("type").scan(bytes("{\"type\": \"order\", \"rest\": [unfinished"), values));
+        assertEquals("order", values[0]);
+    }
+
+    @Test
+    void keepsValuesFoundBeforeTruncation() {
+        var values = new Object[2];
+
+        assertFalse(scanner("type", "id").scan(bytes("{\"type\": \"order\", \"payload\": {\"a\": [1, 2"), values));
+        assertArrayEquals(new Object[]{"order", null}, values);
+    }
+
+    @Test
+    void rejectsTruncatedInput() {
+        for (var json : List.of("", "{", "{\"type\"", "{\"type\":", "{\"type\": \"ord", "{\"a\": 1,", "{\"a\": 1")) {
+            assertFalse(scanner("type").scan(bytes(json), new Object[1]), json);
+        }
+    }
+
+    @Test
+    void rejectsInputWhichIsNotObject() {
+        for (var json : List.of("[{\"type\": \"order\"}]", "\"type\"", "42", "not json", "{\"type\" \"order\"}", "{\"a\": 1 \"type\": 2}")) {
+            var values = new Object[1];
+            assertFalse(scanner("type").scan(bytes(json), values), json);
+            assertNull(values[0], json);
+        }
+    }
+
+    @Test
+    void allowsLeadingWhitespace() {
+        assertArrayEquals(new Object[]{"order"}, scan("\n\t {\"type\":\"order\"}", "type"));
+    }
+
+    @Test
+    void readsLatin1Payload() {
+        var json = "{\"straße\": \"Hauptstraße\", \"type\": \"café\"}";
+        var values = new Object[2];
+
+        assertTrue(new JsonFieldScanner(paths("type", "straße"), StandardCharsets.ISO_8859_1)
+                .scan(json.getBytes(StandardCharsets.ISO_8859_1), values));
+        assertArrayEquals(new Object[]{"café", "Hauptstraße"}, values);
+    }
+
+    @Test
+    void equalsOrgJsonForGeneratedDocuments() {
+        var paths = new String[]{"type", "id", "amount", "customer.name", "customer.address.city", "customer.vip", "items", "note"};
+        for (int i = 0; i < 200; i++) {
+            var json = new JSONObject()
+                    .put("id", i * 7919L)
+                    .put("items", new JSONArray().put(i).put("x" + i).put(new JSONObject().put("type", "item")))
+                    .put("customer", new JSONObject()
+                            .put("vip", i % 3 == 0)
+                            .put("address", new JSONObject().put("city", "Brno \"" + i + "\" \u00e9").put("zip", i))
+                            .put("name", i % 5 == 0 ? JSONObject.NULL : "name\t" + i))
+                    .put("amount", i * 0.25)
+                    .put("type", "type-" + (i % 10));
+            if (i % 2 == 0) {
+                json.put("note", "line\nbreak \\ " + i);
+            }
+            var text = i % 4 == 0 ? json.toString(2) : json.toString();
+
+            var expected = fromTree(text, paths);
+            var values = scan(text, paths);
+
+            assertEquals(expected.length, values.length);
+            for (int j = 0; j < paths.length; j++) {
+                if (expected[j] instanceof JSONArray array) {
+                    assertEquals(array.toString(), String.valueOf(values[j]), paths[j] + " of " + text);
+                } else {
+                    assertEquals(expected[j], values[j], paths[j] + " of " + text);
+                }
+            }
+        }
+    }
+
+    private static Object[] fromTree(String json, String... paths) {
+        var jsonObject = new JSONObject(json);
+        var values = new Object[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            Object value = jsonObject;
+            for (var field : paths[i].split("\\.")) {
+                value = value instanceof JSONObject object ? object.opt(field) : null;
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private static Object[] scan(String json, String... paths) {
+        var values = new Object[paths.length];
+        assertTrue(scanner(paths).scan(bytes(json), values), json);
+        return values;
+    }
+
+    private static JsonFieldScanner scanner(String... paths) {
+        return new JsonFieldScanner(paths(paths), StandardCharsets.UTF_8);
+    }
+
+    private static List<String[]> paths(String... paths) {
+        return Arrays.stream(paths).map(path -> path.split("\\.")).toList();
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(Charset.forName("utf-8"));
+    }
+}